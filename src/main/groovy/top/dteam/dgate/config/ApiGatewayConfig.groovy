@@ -1,15 +1,27 @@
 package top.dteam.dgate.config
 
 import groovy.transform.CompileStatic
+import io.vertx.core.VertxOptions
+import io.vertx.core.http.HttpClientOptions
+import io.vertx.core.http.HttpServerOptions
 
 @CompileStatic
 class ApiGatewayConfig {
 
+    // one instance per event loop, event loops default to 2 * cores
+    static int DEFAULT_INSTANCES = VertxOptions.DEFAULT_EVENT_LOOP_POOL_SIZE
+
     String name
     int port
     String host = '0.0.0.0'
+    int instances = DEFAULT_INSTANCES
     LoginConfig login
     CorsConfig cors
+    HttpServerOptions serverOptions = new HttpServerOptions()
+    // null: responses are not compressed
+    CompressionConfig compression
+    HttpClientOptions upstreamOptions = new HttpClientOptions()
+    WorkerPoolConfig workerPool = new WorkerPoolConfig()
     List<UrlConfig> urlConfigs
     EventBusBridgeConfig eventBusBridgeConfig
 
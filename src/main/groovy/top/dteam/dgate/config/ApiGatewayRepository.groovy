@@ -2,10 +2,22 @@ package top.dteam.dgate.config
 
 import groovy.io.FileType
 import io.vertx.circuitbreaker.CircuitBreakerOptions
+import io.vertx.core.http.Http2Settings
+import io.vertx.core.http.HttpClientOptions
 import io.vertx.core.http.HttpMethod
+import io.vertx.core.http.HttpServerOptions
+import io.vertx.core.http.HttpVersion
+import io.vertx.core.net.JksOptions
+import io.vertx.core.net.OpenSSLEngineOptions
 
 class ApiGatewayRepository {
 
+    static final int DEFAULT_UPSTREAM_POOL_SIZE = 32
+    static final int DEFAULT_UPSTREAM_KEEP_ALIVE_TIMEOUT = 60
+
+    static final String PROTOCOL_HTTP_1_1 = 'http/1.1'
+    static final String PROTOCOL_H2C = 'h2c'
+
     @Delegate
     static List<ApiGatewayConfig> respository = new ArrayList<>()
 
@@ -41,27 +53,57 @@ class ApiGatewayRepository {
         String name = key
         int port = body.port
         String host = body.host ?: '0.0.0.0'
+        int instances = body.instances ?: ApiGatewayConfig.DEFAULT_INSTANCES
         int expires = body.expires ?: 0
         LoginConfig login = body.login ? buildLogin(body.login) : null
         CorsConfig cors = buildCors(body.cors as Map)
         CircuitBreakerOptions defaultCBOptions = buildCircuitBreaker(body.circuitBreaker as Map)
+        CacheConfig cache = buildCache(body.cache as Map)
+        HttpServerOptions serverOptions = buildServer(body.server as Map)
+        CompressionConfig compression = buildCompression(body.server?.compression)
+        if (compression) {
+            serverOptions.setCompressionSupported(true).setCompressionLevel(compression.level)
+        }
+        HttpClientOptions upstreamOptions = buildUpstream(body.upstream as Map)
+        WorkerPoolConfig workerPool = buildWorkerPool(name, body.workerPool as Map)
         List<UrlConfig> urlConfigs = new ArrayList<>()
         body.urls.keySet().each { url ->
-            urlConfigs << buildUrl(url, body.urls[url], defaultCBOptions, expires)
+            UrlConfig urlConfig = buildUrl(url, body.urls[url], defaultCBOptions, expires)
+            urlConfig.cache = cache
+            urlConfig.compression = compression
+            urlConfig.workerPool = workerPool
+            urlConfig.bodyLimit = (body.urls[url].bodyLimit ?: body.bodyLimit ?: -1) as long
+            urlConfigs << urlConfig
         }
+        cache.totalWeight = Math.max(1, urlConfigs.sum(0) { UrlConfig urlConfig ->
+            cachedRoutes(urlConfig) * urlConfig.cacheWeight
+        } as int)
         EventBusBridgeConfig eventBusBridgeConfig = buildEventBusBridge(body.eventBusBridge as Map)
 
         new ApiGatewayConfig(
                 name: name,
                 port: port,
                 host: host,
+                instances: instances,
                 urlConfigs: urlConfigs,
                 login: login,
                 cors: cors,
+                serverOptions: serverOptions,
+                compression: compression,
+                upstreamOptions: upstreamOptions,
+                workerPool: workerPool,
                 eventBusBridgeConfig: eventBusBridgeConfig
         )
     }
 
+    // each cached upstreamURL of a composite url has a cache of its own
+    private static int cachedRoutes(UrlConfig urlConfig) {
+        if (urlConfig instanceof ProxyUrlConfig) {
+            return ((ProxyUrlConfig) urlConfig).upstreamURLs.count { it.expires > 0 } as int
+        }
+        urlConfig instanceof RelayUrlConfig && urlConfig.expires > 0 ? 1 : 0
+    }
+
     private static LoginConfig buildLogin(def login) {
         new LoginConfig(login)
     }
@@ -81,11 +123,113 @@ class ApiGatewayRepository {
                 .setResetTimeout(circuitBreaker?.resetTimeout ?: 10000)
     }
 
+    private static CacheConfig buildCache(Map cache) {
+        new CacheConfig(
+                mode: CacheConfig.parseMode((cache?.mode ?: null) as String),
+                backups: cache?.backups ?: 0,
+                nearCacheSize: cache?.nearCacheSize instanceof Integer ?
+                        cache.nearCacheSize as int : CacheConfig.DEFAULT_NEAR_CACHE_SIZE,
+                heapSize: cache?.heapSize ?: CacheConfig.DEFAULT_HEAP_SIZE
+        )
+    }
+
+    private static HttpServerOptions buildServer(Map server) {
+        HttpServerOptions options = new HttpServerOptions()
+                .setTcpNoDelay(server?.tcpNoDelay instanceof Boolean ? server.tcpNoDelay : HttpServerOptions.DEFAULT_TCP_NO_DELAY)
+                .setReusePort(server?.reusePort ?: HttpServerOptions.DEFAULT_REUSE_PORT)
+                .setAcceptBacklog(server?.acceptBacklog ?: HttpServerOptions.DEFAULT_ACCEPT_BACKLOG)
+
+        boolean http2 = server?.http2 instanceof Boolean ? server.http2 : true
+        options.setAlpnVersions(http2 ? [HttpVersion.HTTP_2, HttpVersion.HTTP_1_1] : [HttpVersion.HTTP_1_1])
+        if (server?.initialWindowSize) {
+            options.setInitialSettings(new Http2Settings().setInitialWindowSize(server.initialWindowSize as int))
+        }
+
+        if (server?.ssl) {
+            if (!server.keyStore?.path) {
+                throw new InvalidConfiguriationException('ssl is enabled but no keyStore is set!')
+            }
+            options.setSsl(true)
+                    .setKeyStoreOptions(new JksOptions()
+                    .setPath(server.keyStore.path as String)
+                    .setPassword(server.keyStore.password as String))
+                    .setUseAlpn(server.useAlpn instanceof Boolean ? server.useAlpn : http2)
+            // the JDK 8 SSL engine can't do ALPN, use OpenSSL (netty-tcnative) when it is on the classpath
+            if (options.useAlpn && OpenSSLEngineOptions.isAvailable()) {
+                options.setOpenSslEngineOptions(new OpenSSLEngineOptions())
+            }
+        } else if (server?.useAlpn) {
+            throw new InvalidConfiguriationException('useAlpn needs ssl!')
+        }
+
+        options
+    }
+
+    // either `compression = true` for the defaults, or a block
+    private static CompressionConfig buildCompression(def compression) {
+        if (compression instanceof Boolean) {
+            return compression ? new CompressionConfig() : null
+        } else if (!compression) {
+            return null
+        }
+
+        int level = compression.level instanceof Integer ? compression.level as int : CompressionConfig.DEFAULT_LEVEL
+        if (level < 1 || level > 9) {
+            throw new InvalidConfiguriationException("Compression level must be between 1 and 9, got ${level}!")
+        }
+
+        new CompressionConfig(
+                level: level,
+                minSize: compression.minSize instanceof Integer ? compression.minSize as int : CompressionConfig.DEFAULT_MIN_SIZE
+        )
+    }
+
+    private static WorkerPoolConfig buildWorkerPool(String name, Map workerPool) {
+        new WorkerPoolConfig(
+                name: name,
+                poolSize: workerPool?.poolSize ?: WorkerPoolConfig.DEFAULT_POOL_SIZE,
+                queueSize: workerPool?.queueSize ?: WorkerPoolConfig.DEFAULT_QUEUE_SIZE,
+                blockedThreshold: workerPool?.blockedThreshold ?: WorkerPoolConfig.DEFAULT_BLOCKED_THRESHOLD
+        )
+    }
+
+    private static HttpClientOptions buildUpstream(Map upstream) {
+        new HttpClientOptions()
+                .setMaxPoolSize(upstream?.maxPoolSize ?: DEFAULT_UPSTREAM_POOL_SIZE)
+                .setKeepAlive(upstream?.keepAlive instanceof Boolean ? upstream.keepAlive : HttpClientOptions.DEFAULT_KEEP_ALIVE)
+                .setKeepAliveTimeout(upstream?.keepAliveTimeout ?: DEFAULT_UPSTREAM_KEEP_ALIVE_TIMEOUT)
+                .setPipelining(upstream?.pipelining ?: HttpClientOptions.DEFAULT_PIPELINING)
+                .setPipeliningLimit(upstream?.pipeliningLimit ?: HttpClientOptions.DEFAULT_PIPELINING_LIMIT)
+                .setConnectTimeout(upstream?.connectTimeout ?: HttpClientOptions.DEFAULT_CONNECT_TIMEOUT)
+                .setIdleTimeout(upstream?.idleTimeout ?: HttpClientOptions.DEFAULT_IDLE_TIMEOUT)
+                .setMaxWaitQueueSize(upstream?.maxWaitQueueSize ?: HttpClientOptions.DEFAULT_MAX_WAIT_QUEUE_SIZE)
+                .setHttp2MaxPoolSize(upstream?.http2MaxPoolSize ?: HttpClientOptions.DEFAULT_HTTP2_MAX_POOL_SIZE)
+                .setHttp2MultiplexingLimit(upstream?.http2MultiplexingLimit ?:
+                        HttpClientOptions.DEFAULT_HTTP2_MULTIPLEXING_LIMIT)
+                .setTryUseCompression(upstream?.compression instanceof Boolean ? upstream.compression :
+                        HttpClientOptions.DEFAULT_TRY_USE_COMPRESSION)
+    }
+
+    static HttpVersion httpVersion(String protocol) {
+        switch (protocol ?: PROTOCOL_HTTP_1_1) {
+            case PROTOCOL_HTTP_1_1:
+                return HttpVersion.HTTP_1_1
+            case PROTOCOL_H2C:
+                return HttpVersion.HTTP_2
+            default:
+                throw new InvalidConfiguriationException("Unknown protocol '${protocol}'!")
+        }
+    }
+
     private static UrlConfig buildUrl(
             def key, def body, CircuitBreakerOptions defaultCBOptions, int defaultExpires = 0) {
         String url = key
         int expires = body.expires != [:] ? body.expires : defaultExpires
         // To avoid expires = 0 but defaultExpires != 0
+        int staleWhileRevalidate = body.staleWhileRevalidate ?: 0
+        int staleIfError = body.staleIfError ?: 0
+        int cacheWeight = body.cacheWeight ?: 1
+        CacheKeyConfig cacheKey = body.cacheKey ? buildCacheKey(body.cacheKey as Map) : null
         Object required = body.required ?: null
         List<HttpMethod> methods = (body.methods && body.methods instanceof List) ?
                 parseMethods(body.methods as List) : []
@@ -93,15 +237,24 @@ class ApiGatewayRepository {
         List<UpstreamURL> upstreamURLs = new ArrayList<>()
         body.upstreamURLs.each { upstreamURL ->
             upstreamURL.expires = upstreamURL.expires != null ? upstreamURL.expires : expires
+            upstreamURL.staleWhileRevalidate = upstreamURL.staleWhileRevalidate != null ?
+                    upstreamURL.staleWhileRevalidate : staleWhileRevalidate
+            upstreamURL.staleIfError = upstreamURL.staleIfError != null ? upstreamURL.staleIfError : staleIfError
             CircuitBreakerOptions cbOptionsForUpstreamURL =
                     upstreamURL.circuitBreaker ?
                             buildCircuitBreaker(upstreamURL.circuitBreaker as Map) :
                             defaultCBOptions
 
             upstreamURL << [circuitBreaker: cbOptionsForUpstreamURL]
+            if (upstreamURL.dependsOn instanceof String) {
+                upstreamURL.dependsOn = [upstreamURL.dependsOn]
+            }
+            httpVersion(upstreamURL.protocol as String)
             upstreamURLs << new UpstreamURL(upstreamURL)
         }
 
+        checkDependencies(url, upstreamURLs)
+
         Map relayTo = body.relayTo
 
         if (expected) {
@@ -114,20 +267,87 @@ class ApiGatewayRepository {
                     required: required,
                     methods: methods,
                     expires: expires,
+                    staleWhileRevalidate: staleWhileRevalidate,
+                    staleIfError: staleIfError,
+                    cacheWeight: cacheWeight,
+                    cacheKey: cacheKey,
+                    rawBody: body.rawBody instanceof Boolean ? body.rawBody : false,
+                    streaming: body.streaming instanceof Boolean ? body.streaming : false,
+                    deadline: (body.deadline ?: 0) as long,
                     upstreamURLs: upstreamURLs)
         } else if (relayTo) {
             CircuitBreakerOptions cbOptionsForRelayTo =
                     relayTo.circuitBreaker ? buildCircuitBreaker(relayTo.circuitBreaker) : defaultCBOptions
 
-            relayTo << [circuitBreaker: cbOptionsForRelayTo]
+            // a missing key of a relayTo block is an empty ConfigObject, not null
+            String protocol = relayTo.protocol ?: PROTOCOL_HTTP_1_1
+            httpVersion(protocol)
+            relayTo << [circuitBreaker: cbOptionsForRelayTo, protocol: protocol]
             return new RelayUrlConfig(url: url, expires: expires,
-                    relayTo: new RelayTo(relayTo))
+                    staleWhileRevalidate: staleWhileRevalidate, staleIfError: staleIfError,
+                    cacheWeight: cacheWeight, cacheKey: cacheKey, relayTo: new RelayTo(relayTo))
         } else {
             throw new InvalidConfiguriationException('Unknown URL type!')
         }
 
     }
 
+    private static void checkDependencies(String url, List<UpstreamURL> upstreamURLs) {
+        Map<String, UpstreamURL> named = [:]
+        upstreamURLs.findAll { it.name }.each {
+            if (named.put(it.name, it)) {
+                throw new InvalidConfiguriationException("Duplicated upstreamURL name '${it.name}' in ${url}!")
+            }
+        }
+        upstreamURLs.each { upstreamURL ->
+            upstreamURL.dependsOn.each {
+                if (!named.containsKey(it)) {
+                    throw new InvalidConfiguriationException("${upstreamURL} of ${url} depends on unknown upstreamURL '${it}'!")
+                }
+            }
+            upstreamURL.params.values().each {
+                if (!upstreamURL.dependsOn.contains(it.tokenize('.')[0])) {
+                    throw new InvalidConfiguriationException("${upstreamURL} of ${url} takes '${it}' from an upstreamURL it does not depend on!")
+                }
+            }
+        }
+
+        Set<String> visited = [] as Set
+        named.keySet().each { checkCycle(url, named, it, [], visited) }
+    }
+
+    private static void checkCycle(String url, Map<String, UpstreamURL> named, String name, List<String> path,
+                                   Set<String> visited) {
+        if (path.contains(name)) {
+            throw new InvalidConfiguriationException("Cyclic dependencies in ${url}: ${(path + name).join(' -> ')}!")
+        }
+        if (!visited.add(name)) {
+            return
+        }
+
+        named[name].dependsOn.each { checkCycle(url, named, it, path + name, visited) }
+    }
+
+    private static CacheKeyConfig buildCacheKey(Map cacheKey) {
+        new CacheKeyConfig(
+                params: parseNames(cacheKey.params),
+                headers: parseNames(cacheKey.headers).collect { it.toLowerCase() }.unique().sort(),
+                claims: parseNames(cacheKey.claims)
+        )
+    }
+
+    private static List<String> parseNames(def names) {
+        if (!names) {
+            return []
+        }
+
+        if (!(names instanceof List) || (names as List).any { !(it instanceof String) }) {
+            throw new InvalidConfiguriationException("cacheKey must be lists of names: '${names}'!")
+        }
+
+        (names as List<String>).unique(false).sort(false)
+    }
+
     private static List<HttpMethod> parseMethods(List methods) {
         List<HttpMethod> parsedMethods = []
 
@@ -0,0 +1,34 @@
+package top.dteam.dgate.config
+
+import groovy.transform.CompileStatic
+import org.apache.ignite.cache.CacheMode
+
+@CompileStatic
+class CacheConfig {
+
+    static final int DEFAULT_NEAR_CACHE_SIZE = 1000
+    static final long DEFAULT_HEAP_SIZE = 16 * 1024 * 1024
+
+    CacheMode mode = CacheMode.LOCAL
+    int backups = 0
+    // entries kept on heap by each node in front of a partitioned or replicated cache, 0 disables it
+    int nearCacheSize = DEFAULT_NEAR_CACHE_SIZE
+    // bytes of responses kept on heap by a route of weight 1, the rest lives off-heap
+    long heapSize = DEFAULT_HEAP_SIZE
+    // weights of all the cached routes of the gateway, a route gets its weight's share of the off-heap region
+    int totalWeight = 1
+
+    static CacheMode parseMode(String mode) {
+        switch (mode ?: 'local') {
+            case 'local':
+                return CacheMode.LOCAL
+            case 'partitioned':
+                return CacheMode.PARTITIONED
+            case 'replicated':
+                return CacheMode.REPLICATED
+            default:
+                throw new InvalidConfiguriationException("Unknown cache mode '${mode}'!")
+        }
+    }
+
+}
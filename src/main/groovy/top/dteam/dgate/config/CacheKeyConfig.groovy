@@ -0,0 +1,16 @@
+package top.dteam.dgate.config
+
+import groovy.transform.CompileStatic
+
+/**
+ * What a cached response varies by, besides the request path. Names are sorted,
+ * header names lower-cased, so keys don't depend on the order they are declared in.
+ */
+@CompileStatic
+class CacheKeyConfig {
+
+    List<String> params = []
+    List<String> headers = []
+    List<String> claims = []
+
+}
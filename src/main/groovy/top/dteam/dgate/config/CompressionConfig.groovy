@@ -0,0 +1,26 @@
+package top.dteam.dgate.config
+
+import groovy.transform.CompileStatic
+
+@CompileStatic
+class CompressionConfig {
+
+    static final int DEFAULT_LEVEL = 6
+    static final int DEFAULT_MIN_SIZE = 1024
+
+    // gzip/deflate level, 1 (fastest) to 9 (smallest)
+    int level = DEFAULT_LEVEL
+    // bodies smaller than this are not worth the CPU, nor the header bytes
+    int minSize = DEFAULT_MIN_SIZE
+
+    static boolean isCompressible(String contentType) {
+        if (!contentType) {
+            return false
+        }
+
+        String mimeType = contentType.split(';')[0].trim().toLowerCase()
+        mimeType.startsWith('text/') || mimeType.endsWith('json') || mimeType.endsWith('xml') ||
+                mimeType.endsWith('javascript') || mimeType == 'image/svg+xml'
+    }
+
+}
@@ -7,6 +7,7 @@ class LoginConfig {
 
     static long DEFAULT_REFRESH_LIMIT = 30 * 60
     static int DEFAULT_REFRESH_EXPIRE = 30 * 60
+    static int DEFAULT_TOKEN_CACHE_SIZE = 10000
 
     private String url
     private Map config
@@ -49,4 +50,8 @@ class LoginConfig {
         (int) (config?.refreshExpire ?: DEFAULT_REFRESH_EXPIRE)
     }
 
+    int tokenCacheSize() {
+        (int) (config?.tokenCacheSize ?: DEFAULT_TOKEN_CACHE_SIZE)
+    }
+
 }
@@ -6,5 +6,11 @@ import groovy.transform.CompileStatic
 class ProxyUrlConfig extends UrlConfig{
 
     List<UpstreamURL> upstreamURLs
+    // forward the request body as received, instead of re-encoding the merged params
+    boolean rawBody = false
+    // write the payloads of several upstreamURLs as they arrive, instead of merging them first
+    boolean streaming = false
+    // millis, upstreamURLs not answered by then are left out of the response, 0: wait for all
+    long deadline = 0
 
 }
@@ -2,14 +2,20 @@ package top.dteam.dgate.config
 
 import groovy.transform.CompileStatic
 import io.vertx.circuitbreaker.CircuitBreakerOptions
+import io.vertx.core.http.HttpVersion
 
 @CompileStatic
 class RelayTo {
 
     String host
     int port
+    String protocol = ApiGatewayRepository.PROTOCOL_HTTP_1_1
     CircuitBreakerOptions circuitBreaker
 
+    HttpVersion httpVersion() {
+        ApiGatewayRepository.httpVersion(protocol)
+    }
+
     @Override
     String toString() {
         "$host-$port"
@@ -3,6 +3,8 @@ package top.dteam.dgate.config
 import groovy.transform.CompileStatic
 import groovy.transform.EqualsAndHashCode
 import io.vertx.circuitbreaker.CircuitBreakerOptions
+import io.vertx.core.http.HttpVersion
+import io.vertx.core.json.JsonArray
 import io.vertx.core.json.JsonObject
 import top.dteam.dgate.gateway.SimpleResponse
 
@@ -14,46 +16,79 @@ class UpstreamURL {
     int port
     String url
     int expires = 0
+    int staleWhileRevalidate = 0
+    int staleIfError = 0
+    String protocol = ApiGatewayRepository.PROTOCOL_HTTP_1_1
     CircuitBreakerOptions circuitBreaker
+    // before/after run on the gateway's worker pool instead of the event loop
+    boolean blocking = false
+    // composite urls only: called once the named upstreamURLs answered, taking params from their payloads
+    String name
+    List<String> dependsOn = []
+    // param name -> path into the payload of a dependency, such as 'order.items.0.id'
+    Map<String, String> params = [:]
 
     Closure<JsonObject> before
     Closure<SimpleResponse> after
 
-    String resolve(JsonObject context) {
-        String result = resolveParams(getParamsFromUrl(url), context)
-        verifyUrl(result) ?: '/'
+    private UrlTemplate template
+
+    void setUrl(String url) {
+        this.url = url
+        this.template = url != null ? UrlTemplate.compile(url) : null
     }
 
-    private static List<String> getParamsFromUrl(String url) {
-        Arrays.asList(url.split('/')).findAll { part -> part.startsWith(':') }
+    /**
+     * Each gateway instance runs on its own event loop, so it gets its own copy of the
+     * closures and nothing of them is shared between loops. Delegates are never set on
+     * these copies, but on a clone made for each call.
+     */
+    UpstreamURL copy() {
+        new UpstreamURL(host: host, port: port, url: url, expires: expires,
+                staleWhileRevalidate: staleWhileRevalidate, staleIfError: staleIfError,
+                protocol: protocol, circuitBreaker: circuitBreaker, blocking: blocking,
+                name: name, dependsOn: dependsOn, params: params,
+                before: (Closure<JsonObject>) before?.clone(), after: (Closure<SimpleResponse>) after?.clone())
     }
 
-    private String resolveParams(List<String> params, JsonObject context) {
-        String result = url
+    HttpVersion httpVersion() {
+        ApiGatewayRepository.httpVersion(protocol)
+    }
 
-        params?.each { param ->
-            String value = param.endsWith('?') ? context.getValue(param[1..-2]) : context.getValue(param[1..-1])
-            if (value) {
-                result = result.replace(param, value)
+    String resolve(JsonObject context) {
+        template.resolve(context)
+    }
+
+    /**
+     * The params of the request with the values taken from the payloads of the dependencies added,
+     * a path leading nowhere adds nothing.
+     */
+    JsonObject withDependencies(JsonObject body, Map<String, JsonObject> dependencies) {
+        JsonObject merged = body.copy()
+        params.each { String param, String path ->
+            Object value = valueAt(dependencies, path)
+            if (value != null) {
+                merged.put(param, value)
             }
         }
-
-        result
+        merged
     }
 
-    private static String verifyUrl(String url) {
-        String result = url
-
-        List<String> unresolvedParams = getParamsFromUrl(result)
-        unresolvedParams.reverseEach { unresolvedParam ->
-            if (unresolvedParam.endsWith('?') && result.endsWith(unresolvedParam)) {
-                result = result - "/${unresolvedParam}"
+    private static Object valueAt(Map<String, JsonObject> dependencies, String path) {
+        String[] segments = path.split('\\.')
+        Object value = dependencies.get(segments[0])
+        for (int i = 1; i < segments.length && value != null; i++) {
+            Object current = value
+            if (current instanceof JsonObject) {
+                value = current.getValue(segments[i])
+            } else if (current instanceof JsonArray && segments[i].isInteger()) {
+                int index = segments[i].toInteger()
+                value = index < current.size() ? current.getValue(index) : null
             } else {
-                throw new InvalidConfiguriationException("无效的URL格式,参数值或格式不对")
+                value = null
             }
         }
-
-        result
+        value
     }
 
     @Override
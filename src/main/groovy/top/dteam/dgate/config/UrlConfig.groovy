@@ -8,6 +8,17 @@ abstract class UrlConfig {
 
     String url
     int expires = 0
+    int staleWhileRevalidate = 0
+    int staleIfError = 0
+    int cacheWeight = 1
+    CacheConfig cache = new CacheConfig()
+    // null: cached responses are stored as the upstream sent them
+    CompressionConfig compression
+    // null: the whole request uri and JWT token
+    CacheKeyConfig cacheKey
+    // bytes, larger request bodies are answered with 413, -1: no limit
+    long bodyLimit = -1
+    WorkerPoolConfig workerPool = new WorkerPoolConfig()
     Object required
     List<HttpMethod> methods
 
@@ -0,0 +1,117 @@
+package top.dteam.dgate.config
+
+import groovy.transform.CompileStatic
+import io.vertx.core.json.JsonObject
+
+import java.nio.charset.StandardCharsets
+
+/**
+ * An upstream url such as {@code /users/:id/orders/:page?}, split once into its segments so that
+ * resolving it for a request is a single pass over them. Path params take whole segments, and
+ * optional ones may only be left out at the end of the url, before its trailing slash if any.
+ */
+@CompileStatic
+class UrlTemplate {
+
+    private static final char[] HEX = '0123456789ABCDEF'.toCharArray()
+    // unreserved and sub-delims besides letters and digits, plus ':' and '@'
+    private static final String UNENCODED = '-._~!$&\'()*+,;=:@'
+
+    private final String[] literals
+    private final String[] params
+    private final boolean[] optional
+    private final boolean trailingSlash
+    private final int length
+
+    private UrlTemplate(String[] literals, String[] params, boolean[] optional, boolean trailingSlash, int length) {
+        this.literals = literals
+        this.params = params
+        this.optional = optional
+        this.trailingSlash = trailingSlash
+        this.length = length
+    }
+
+    static UrlTemplate compile(String url) {
+        // like String.split, trailing empty segments are dropped, the trailing slash is kept apart
+        String[] segments = url.split('/')
+        String[] literals = new String[segments.length]
+        String[] params = new String[segments.length]
+        boolean[] optional = new boolean[segments.length]
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i]
+            if (segment.startsWith(':')) {
+                optional[i] = segment.endsWith('?')
+                params[i] = segment.substring(1, optional[i] ? segment.length() - 1 : segment.length())
+            } else {
+                literals[i] = segment
+            }
+        }
+
+        new UrlTemplate(literals, params, optional, url.length() > 1 && url.endsWith('/'), url.length())
+    }
+
+    String resolve(JsonObject context) {
+        StringBuilder result = new StringBuilder(length + 16)
+        int missingFrom = -1
+        for (int i = 0; i < literals.length; i++) {
+            String value = literals[i] != null ? literals[i] : valueOf(context, params[i])
+            if (value == null) {
+                if (!optional[i]) {
+                    throw new InvalidConfiguriationException("无效的URL格式,参数值或格式不对")
+                }
+                if (missingFrom < 0) {
+                    missingFrom = result.length()
+                }
+            } else if (missingFrom >= 0) {
+                throw new InvalidConfiguriationException("无效的URL格式,参数值或格式不对")
+            }
+
+            if (i > 0) {
+                result.append('/' as char)
+            }
+            if (literals[i] != null) {
+                result.append(value)
+            } else if (value != null) {
+                appendEncoded(result, value)
+            }
+        }
+
+        if (missingFrom >= 0) {
+            result.setLength(missingFrom)
+        }
+        if (trailingSlash) {
+            result.append('/' as char)
+        }
+
+        result.length() > 0 ? result.toString() : '/'
+    }
+
+    private static String valueOf(JsonObject context, String param) {
+        Object value = context.getValue(param)
+        String string = value?.toString()
+        string ? string : null
+    }
+
+    // see: https://tools.ietf.org/html/rfc3986#section-3.3, a value never spans segments
+    private static void appendEncoded(StringBuilder result, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i)
+            if (isPchar(c)) {
+                result.append(c)
+            } else {
+                int end = Character.isHighSurrogate(c) && i + 1 < value.length() ? i + 2 : i + 1
+                byte[] bytes = value.substring(i, end).getBytes(StandardCharsets.UTF_8)
+                i = end - 1
+                for (byte b : bytes) {
+                    result.append('%' as char).append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F])
+                }
+            }
+        }
+    }
+
+    private static boolean isPchar(char c) {
+        (c >= ('a' as char) && c <= ('z' as char)) || (c >= ('A' as char) && c <= ('Z' as char)) ||
+                (c >= ('0' as char) && c <= ('9' as char)) || UNENCODED.indexOf((int) c) >= 0
+    }
+
+}
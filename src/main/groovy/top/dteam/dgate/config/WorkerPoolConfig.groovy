@@ -0,0 +1,21 @@
+package top.dteam.dgate.config
+
+import groovy.transform.CompileStatic
+
+@CompileStatic
+class WorkerPoolConfig {
+
+    static final int DEFAULT_POOL_SIZE = 8
+    static final int DEFAULT_QUEUE_SIZE = 256
+    static final int DEFAULT_BLOCKED_THRESHOLD = 100
+
+    // shared by all instances of a gateway
+    String name
+    // threads running the closures of `blocking` upstreamURLs
+    int poolSize = DEFAULT_POOL_SIZE
+    // closures waiting or running beyond this are refused with 503
+    int queueSize = DEFAULT_QUEUE_SIZE
+    // millis, closures run on the event loop for longer are counted as blocking it
+    int blockedThreshold = DEFAULT_BLOCKED_THRESHOLD
+
+}
@@ -4,12 +4,17 @@ import groovy.transform.CompileStatic
 import groovy.transform.EqualsAndHashCode
 import io.vertx.core.json.JsonObject
 
-@EqualsAndHashCode
+@EqualsAndHashCode(excludes = ['cacheTags', 'etag', 'lastModified'])
 @CompileStatic
 class SimpleResponse {
 
     int statusCode
     JsonObject payload
+    // from the dgate-cache-tags header of the upstream response
+    List<String> cacheTags = []
+    // validators of the upstream response, sent back to it when a cached response is revalidated
+    String etag
+    String lastModified
 
     JsonObject toJsonObject() {
         JsonObject jsonObject = new JsonObject()
@@ -3,6 +3,7 @@ package top.dteam.dgate;
 import io.vertx.core.Vertx;
 import io.vertx.core.VertxOptions;
 import io.vertx.spi.cluster.ignite.IgniteClusterManager;
+import org.apache.ignite.configuration.DataStorageConfiguration;
 import org.apache.ignite.configuration.IgniteConfiguration;
 import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi;
 import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder;
@@ -29,11 +30,19 @@ public class Launcher extends io.vertx.core.Launcher {
         System.setProperty("IGNITE_NO_SHUTDOWN_HOOK", "true");
         options.setClusterManager(new IgniteClusterManager(igniteConfiguration()));
         options.getEventBusOptions().setClustered(true);
+        // epoll on Linux, falls back to NIO when the native library is not available
+        options.setPreferNativeTransport("true".equals(System.getenv("DGATE_NATIVE_TRANSPORT")));
     }
 
     @Override
     public void afterStartingVertx(Vertx vertx) {
         CacheLocator.init(vertx);
+
+        if (vertx.isNativeTransportEnabled()) {
+            logger.info("Dgate is using native transport.");
+        } else if ("true".equals(System.getenv("DGATE_NATIVE_TRANSPORT"))) {
+            logger.warn("Native transport is not available, fall back to NIO.");
+        }
     }
 
     private static IgniteConfiguration igniteConfiguration() {
@@ -51,8 +60,15 @@ public class Launcher extends io.vertx.core.Launcher {
         // Override default discovery SPI.
         cfg.setDiscoverySpi(spi);
 
+        // off-heap budget of the response caches of all the routes, in MB
+        long cacheMemory = System.getenv("DGATE_CACHE_MEMORY") == null ?
+                CacheLocator.DEFAULT_DATA_REGION_SIZE :
+                Long.parseLong(System.getenv("DGATE_CACHE_MEMORY")) * 1024 * 1024;
+        cfg.setDataStorageConfiguration(new DataStorageConfiguration()
+                .setDataRegionConfigurations(CacheLocator.dataRegion(cacheMemory)));
+
         logger.info("Dgate is working on ip based cluster mode. " +
-                "Cluster ip list: {}", clusterNodes);
+                "Cluster ip list: {}, response cache memory: {} bytes", clusterNodes, cacheMemory);
 
         return cfg;
     }
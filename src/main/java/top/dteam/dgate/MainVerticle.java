@@ -1,20 +1,31 @@
 package top.dteam.dgate;
 
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
 import top.dteam.dgate.config.ApiGatewayRepository;
+import top.dteam.dgate.gateway.AdminServer;
 import top.dteam.dgate.gateway.ApiGateway;
 import top.dteam.dgate.monitor.CircuitBreakerMonitor;
-import top.dteam.dgate.utils.cache.CacheLocator;
+import top.dteam.dgate.monitor.MetricsMonitor;
+import top.dteam.dgate.utils.cache.CachePurger;
 
 public class MainVerticle extends AbstractVerticle {
 
     @Override
     public void start() {
         vertx.deployVerticle(new CircuitBreakerMonitor());
+        vertx.deployVerticle(new MetricsMonitor());
+        vertx.deployVerticle(new CachePurger());
+        if (System.getenv("DGATE_ADMIN_PORT") != null) {
+            String host = System.getenv("DGATE_ADMIN_HOST") != null ?
+                    System.getenv("DGATE_ADMIN_HOST") : AdminServer.DEFAULT_HOST;
+            vertx.deployVerticle(new AdminServer(Integer.parseInt(System.getenv("DGATE_ADMIN_PORT")), host));
+        }
 
         ApiGatewayRepository.load();
         ApiGatewayRepository.getRespository().stream()
-                .forEach(apiGatewayConfig -> vertx.deployVerticle(new ApiGateway(apiGatewayConfig)));
+                .forEach(apiGatewayConfig -> vertx.deployVerticle(() -> new ApiGateway(apiGatewayConfig),
+                        new DeploymentOptions().setInstances(apiGatewayConfig.getInstances())));
 
     }
 }
@@ -0,0 +1,72 @@
+package top.dteam.dgate.gateway;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.handler.BodyHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.dteam.dgate.utils.Utils;
+import top.dteam.dgate.utils.cache.CachePurger;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Operations endpoints of a dgate node, kept off the gateways' ports and bound to localhost
+ * unless told otherwise, see DGATE_ADMIN_PORT and DGATE_ADMIN_HOST.
+ */
+public class AdminServer extends AbstractVerticle {
+
+    public static final String DEFAULT_HOST = "127.0.0.1";
+
+    private static final Logger logger = LoggerFactory.getLogger(AdminServer.class);
+
+    private int port;
+    private String host;
+    private HttpServer httpServer;
+
+    public AdminServer(int port, String host) {
+        this.port = port;
+        this.host = host;
+    }
+
+    @Override
+    public void start() {
+        Router router = Router.router(vertx);
+        router.post("/cache/purge").handler(BodyHandler.create()).handler(routingContext -> {
+            JsonObject criteria;
+            try {
+                criteria = routingContext.getBodyAsJson();
+            } catch (DecodeException e) {
+                criteria = null;
+            }
+
+            if (!CachePurger.isValid(criteria)) {
+                Map<String, Object> error = new HashMap<>();
+                error.put("error", "one of " + CachePurger.CRITERIA + " is required.");
+                Utils.fireJsonResponse(routingContext.response(), 400, error);
+                return;
+            }
+
+            // every node of the cluster purges its own caches
+            vertx.eventBus().publish(CachePurger.ADDRESS, criteria);
+            Utils.fireJsonResponse(routingContext.response(), 202, criteria.getMap());
+        });
+
+        httpServer = vertx.createHttpServer().requestHandler(router::accept).listen(port, host, result -> {
+            if (result.succeeded()) {
+                logger.info("Admin server is listening at {}:{} ...", host, port);
+            } else {
+                logger.error("Admin server failed to listen at {}:{}: ", host, port, result.cause());
+            }
+        });
+    }
+
+    @Override
+    public void stop() {
+        httpServer.close();
+    }
+}
@@ -16,6 +16,12 @@ import top.dteam.dgate.config.ApiGatewayConfig;
 import top.dteam.dgate.config.Consumer;
 import top.dteam.dgate.config.EventBusBridgeConfig;
 import top.dteam.dgate.config.Publisher;
+import top.dteam.dgate.monitor.ClosureMetrics;
+import top.dteam.dgate.monitor.MetricsMonitor;
+import top.dteam.dgate.utils.ClosureExecutor;
+import top.dteam.dgate.utils.RequestUtils;
+import top.dteam.dgate.utils.UpstreamClientRegistry;
+import top.dteam.dgate.utils.cache.CacheLocator;
 
 import java.util.List;
 import java.util.Map;
@@ -24,7 +30,11 @@ public class ApiGateway extends AbstractVerticle {
 
     private static final Logger logger = LoggerFactory.getLogger(ApiGateway.class);
 
+    private static final String EVENT_BUS_BRIDGE_OWNERS = "dgate.event-bus-bridge-owners";
+
     private ApiGatewayConfig config;
+    private UpstreamClientRegistry upstreamClients;
+    private long metricsTimer;
 
     public ApiGateway(ApiGatewayConfig config) {
         this.config = config;
@@ -32,8 +42,9 @@ public class ApiGateway extends AbstractVerticle {
 
     @Override
     public void start() {
-        HttpServer httpServer = vertx.createHttpServer();
-        Router router = RouterBuilder.build(vertx, config);
+        HttpServer httpServer = vertx.createHttpServer(config.getServerOptions());
+        upstreamClients = new UpstreamClientRegistry(vertx, config.getUpstreamOptions());
+        Router router = RouterBuilder.build(vertx, config, new RequestUtils(upstreamClients));
 
         EventBusBridgeConfig eventBusBridgeConfig = config.getEventBusBridgeConfig();
         if (eventBusBridgeConfig != null) {
@@ -42,18 +53,56 @@ public class ApiGateway extends AbstractVerticle {
 
         httpServer.requestHandler(router::accept).listen(config.getPort(), config.getHost(), result -> {
             if (result.succeeded()) {
-                if (eventBusBridgeConfig != null) {
+                if (eventBusBridgeConfig != null && ownEventBusBridge()) {
                     EventBus eventBus = vertx.eventBus();
                     registerConsumers(eventBus, eventBusBridgeConfig.getConsumers());
                     registerPublishers(eventBus, eventBusBridgeConfig.getPublishers());
                 }
 
+                metricsTimer = vertx.setPeriodic(MetricsMonitor.PUBLISH_INTERVAL, tid ->
+                        vertx.eventBus().publish(MetricsMonitor.ADDRESS, metrics()));
+
                 logger.info("API Gateway {} is listening at {}:{} ...",
                         config.getName(), config.getHost(), config.getPort());
+            } else {
+                logger.error("API Gateway {} failed to listen at {}:{}: ",
+                        config.getName(), config.getHost(), config.getPort(), result.cause());
             }
         });
     }
 
+    @Override
+    public void stop() {
+        vertx.cancelTimer(metricsTimer);
+        upstreamClients.close();
+
+        if (config.getEventBusBridgeConfig() != null) {
+            vertx.sharedData().getLocalMap(EVENT_BUS_BRIDGE_OWNERS).remove(ownerKey(), deploymentID());
+        }
+    }
+
+    // All instances of a gateway share its port, but the mocked consumers and publishers
+    // must be registered only once, otherwise every message would be published N times.
+    private boolean ownEventBusBridge() {
+        Object owner = vertx.sharedData().getLocalMap(EVENT_BUS_BRIDGE_OWNERS)
+                .putIfAbsent(ownerKey(), deploymentID());
+        return owner == null;
+    }
+
+    private String ownerKey() {
+        return String.format("%s-%s:%d", config.getName(), config.getHost(), config.getPort());
+    }
+
+    private JsonObject metrics() {
+        return new JsonObject()
+                .put("gateway", config.getName())
+                .put("instance", deploymentID() + "@" + Thread.currentThread().getName())
+                .put("upstreamPools", upstreamClients.stats())
+                .put("responseCaches", CacheLocator.stats(config.getName()))
+                .put("closures", ClosureMetrics.stats(config.getName()))
+                .put("workerPool", ClosureExecutor.stats(config.getWorkerPool()));
+    }
+
     private void buildEventBusBridge(String urlPattern, Router router) {
         SockJSHandler sockJSHandler = SockJSHandler.create(vertx);
         PermittedOptions allAllowed = new PermittedOptions().setAddressRegex(".*");
@@ -9,11 +9,15 @@ import io.vertx.ext.web.handler.JWTAuthHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import top.dteam.dgate.config.*;
+import top.dteam.dgate.handler.CompressionThresholdHandler;
 import top.dteam.dgate.handler.GatewayRequestHandler;
 import top.dteam.dgate.handler.JWTTokenRefreshHandler;
 import top.dteam.dgate.handler.JWTTokenSniffer;
+import top.dteam.dgate.utils.CachingJWTAuth;
 import top.dteam.dgate.utils.JWTTokenRefresher;
+import top.dteam.dgate.utils.RequestUtils;
 import top.dteam.dgate.utils.Utils;
+import top.dteam.dgate.utils.VerifiedTokens;
 
 import java.util.HashMap;
 import java.util.List;
@@ -25,15 +29,27 @@ public class RouterBuilder {
     private static final Logger logger = LoggerFactory.getLogger(RouterBuilder.class);
 
     public static Router build(Vertx vertx, ApiGatewayConfig apiGatewayConfig) {
+        return build(vertx, apiGatewayConfig, new RequestUtils(vertx));
+    }
+
+    public static Router build(Vertx vertx, ApiGatewayConfig apiGatewayConfig, RequestUtils requestUtils) {
         Router router = Router.router(vertx);
+        addCompressionThresholdHandler(router, apiGatewayConfig);
         addCorsHandler(router, apiGatewayConfig);
         addBodyHandlerExceptRelayTo(router, apiGatewayConfig);
-        addJWTTokenSniffer(vertx, router, apiGatewayConfig);
-        addRequestHandlers(vertx, router, apiGatewayConfig);
+        VerifiedTokens verifiedTokens = createVerifiedTokensIfNeeded(vertx, apiGatewayConfig);
+        addJWTTokenSniffer(router, verifiedTokens);
+        addRequestHandlers(vertx, router, apiGatewayConfig, requestUtils, verifiedTokens);
         addFailureHandler(router);
         return router;
     }
 
+    private static void addCompressionThresholdHandler(Router router, ApiGatewayConfig apiGatewayConfig) {
+        if (apiGatewayConfig.getCompression() != null) {
+            router.route().handler(new CompressionThresholdHandler(apiGatewayConfig.getCompression()));
+        }
+    }
+
     private static void addCorsHandler(Router router, ApiGatewayConfig apiGatewayConfig) {
         CorsConfig corsConfig = apiGatewayConfig.getCors();
         if (corsConfig != null) {
@@ -66,41 +82,48 @@ public class RouterBuilder {
     private static void addBodyHandlerExceptRelayTo(Router router, ApiGatewayConfig apiGatewayConfig) {
         apiGatewayConfig.getUrlConfigs().forEach(urlConfig -> {
             if (urlConfig.getClass() != RelayUrlConfig.class) {
-                router.route(urlConfig.getUrl()).handler(BodyHandler.create());
+                router.route(urlConfig.getUrl()).handler(BodyHandler.create().setBodyLimit(urlConfig.getBodyLimit()));
             }
         });
     }
 
-    private static void addJWTTokenSniffer(Vertx vertx, Router router, ApiGatewayConfig apiGatewayConfig) {
-        if (apiGatewayConfig.getLogin() != null) {
-            router.route().handler(new JWTTokenSniffer(Utils.createJWT(vertx)));
+    // shared by the sniffer and the auth handler, so that a token is verified once for both
+    private static VerifiedTokens createVerifiedTokensIfNeeded(Vertx vertx, ApiGatewayConfig apiGatewayConfig) {
+        LoginConfig login = apiGatewayConfig.getLogin();
+        return login != null ? new VerifiedTokens(Utils.createJWT(vertx), login.tokenCacheSize()) : null;
+    }
+
+    private static void addJWTTokenSniffer(Router router, VerifiedTokens verifiedTokens) {
+        if (verifiedTokens != null) {
+            router.route().handler(new JWTTokenSniffer(verifiedTokens));
         }
     }
 
-    private static void addRequestHandlers(Vertx vertx, Router router, ApiGatewayConfig apiGatewayConfig) {
+    private static void addRequestHandlers(Vertx vertx, Router router, ApiGatewayConfig apiGatewayConfig,
+                                           RequestUtils requestUtils, VerifiedTokens verifiedTokens) {
         List<UrlConfig> urlConfigs = apiGatewayConfig.getUrlConfigs();
         LoginConfig login = apiGatewayConfig.getLogin();
-        JWTAuth auth = createAuthIfNeeded(vertx, router, login, urlConfigs);
+        JWTAuth auth = createAuthIfNeeded(vertx, router, login, urlConfigs, verifiedTokens);
 
         urlConfigs.forEach(urlConfig -> {
             if (login != null && urlConfig.getUrl().equals(login.login())) {
-                router.route(urlConfig.getUrl()).handler(GatewayRequestHandler.create(vertx, urlConfig, auth)
+                router.route(urlConfig.getUrl()).handler(GatewayRequestHandler.create(vertx, urlConfig, auth, requestUtils)
                         .nameOfApiGateway(apiGatewayConfig.getName()));
             } else {
-                router.route(urlConfig.getUrl()).handler(GatewayRequestHandler.create(vertx, urlConfig, null)
+                router.route(urlConfig.getUrl()).handler(GatewayRequestHandler.create(vertx, urlConfig, null, requestUtils)
                         .nameOfApiGateway(apiGatewayConfig.getName()));
             }
         });
     }
 
     private static JWTAuth createAuthIfNeeded(Vertx vertx, Router router, LoginConfig login,
-                                              List<UrlConfig> urlConfigs) {
+                                              List<UrlConfig> urlConfigs, VerifiedTokens verifiedTokens) {
         if (login != null) {
 
             // this handler MUST BE the first handler if login is enabled !!!
             createTokenFreshHandler(vertx, router, login);
 
-            JWTAuth jwtAuth = Utils.createAuthProvider(vertx);
+            JWTAuth jwtAuth = new CachingJWTAuth(Utils.createAuthProvider(vertx), verifiedTokens);
             JWTAuthHandler jwtAuthHandler = JWTAuthHandler.create(jwtAuth, login.login());
             if (login.only().isEmpty() && login.ignore().isEmpty()) {
                 router.route().handler(jwtAuthHandler);
@@ -118,9 +141,9 @@ public class RouterBuilder {
     }
 
     private static void createTokenFreshHandler(Vertx vertx, Router router, LoginConfig login) {
-        JWTTokenRefresher jwtTokenRefresher = new JWTTokenRefresher(vertx);
+        JWTTokenRefresher jwtTokenRefresher = new JWTTokenRefresher(vertx, login.refreshExpire());
         router.route(JWTTokenRefreshHandler.URL).handler(
-                new JWTTokenRefreshHandler(jwtTokenRefresher, login.refreshLimit(), login.refreshExpire()));
+                new JWTTokenRefreshHandler(jwtTokenRefresher, login.refreshLimit()));
     }
 
     private static void addFailureHandler(Router router) {
@@ -0,0 +1,169 @@
+package top.dteam.dgate.handler;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.dteam.dgate.gateway.SimpleResponse;
+import top.dteam.dgate.utils.Utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * Writes the payload of a composite url part by part as the upstreams answer, instead of merging
+ * all of them into one JsonObject first, so that each part can be dropped once it is written.
+ *
+ * The status line goes out with the first successful part: the response is then 200, and the parts
+ * failing later are only seen in the body. Failed parts arriving before are held back until then,
+ * when no part succeeds at all the response is the same as without streaming. A top level key is
+ * written once, the part arriving first wins and the same key of later parts is dropped.
+ *
+ * Fields are encoded a chunk at a time, and only while the write queue of the response has room:
+ * for a slow client the parts wait as they are until it drains, rather than all of them piling up
+ * encoded in the queue on top of their payloads.
+ */
+class CompositeResponseWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompositeResponseWriter.class);
+    private static final int CHUNK_SIZE = 8192;
+
+    private HttpServerRequest request;
+    private HttpServerResponse response;
+    private ToIntFunction<List<Integer>> finalStatusCode;
+    private int remaining;
+    private List<Integer> statusCodes = new ArrayList<>();
+    private List<JsonObject> heldBack = new ArrayList<>();
+    private Set<String> keys = new HashSet<>();
+    private Deque<JsonObject> pending = new ArrayDeque<>();
+    // of the part being written
+    private Iterator<Map.Entry<String, Object>> fields;
+    private boolean started;
+    private boolean ended;
+
+    CompositeResponseWriter(HttpServerRequest request, HttpServerResponse response, int parts,
+                            ToIntFunction<List<Integer>> finalStatusCode) {
+        this.request = request;
+        this.response = response;
+        this.remaining = parts;
+        this.finalStatusCode = finalStatusCode;
+    }
+
+    void write(SimpleResponse part) {
+        statusCodes.add(part.getStatusCode());
+        remaining--;
+        if (started) {
+            enqueue(part.getPayload());
+            flush();
+        } else if (part.getStatusCode() >= 200 && part.getStatusCode() < 300) {
+            start();
+            heldBack.forEach(this::enqueue);
+            heldBack = null;
+            enqueue(part.getPayload());
+            flush();
+        } else {
+            heldBack.add(part.getPayload());
+            if (remaining == 0) {
+                endWithoutStreaming();
+            }
+        }
+    }
+
+    private void enqueue(JsonObject payload) {
+        if (payload != null) {
+            pending.add(payload);
+        }
+    }
+
+    private void start() {
+        started = true;
+        response.setStatusCode(200).setChunked(true)
+                .putHeader("content-type", "application/json; charset=utf-8")
+                .write("{");
+    }
+
+    // writes the pending parts until they run out or the write queue is full, a part is dropped
+    // as soon as its last field is written
+    private void flush() {
+        if (ended) {
+            return;
+        }
+        if (response.closed()) {
+            ended = true;
+            pending.clear();
+            fields = null;
+            return;
+        }
+
+        while (!response.writeQueueFull()) {
+            Buffer chunk = nextChunk();
+            if (chunk.length() > 0) {
+                response.write(chunk);
+            } else if (remaining == 0) {
+                ended = true;
+                response.end("}");
+                return;
+            } else {
+                return;
+            }
+        }
+        response.drainHandler(v -> flush());
+    }
+
+    private Buffer nextChunk() {
+        Buffer chunk = Buffer.buffer();
+        while (chunk.length() < CHUNK_SIZE) {
+            if (fields == null || !fields.hasNext()) {
+                JsonObject payload = pending.poll();
+                if (payload == null) {
+                    break;
+                }
+                fields = payload.iterator();
+                continue;
+            }
+
+            Map.Entry<String, Object> field = fields.next();
+            if (!fields.hasNext()) {
+                fields = null;
+            }
+            if (!keys.add(field.getKey())) {
+                logger.debug("Dropped {} of a later part of {}, it has been written already",
+                        field.getKey(), request.path());
+                continue;
+            }
+
+            if (keys.size() > 1) {
+                chunk.appendString(",");
+            }
+            chunk.appendString(Json.encode(field.getKey())).appendString(":")
+                    .appendBuffer(Json.encodeToBuffer(field.getValue()));
+        }
+        return chunk;
+    }
+
+    private void endWithoutStreaming() {
+        if (response.closed()) {
+            return;
+        }
+
+        JsonObject merged = new JsonObject();
+        heldBack.stream().filter(Objects::nonNull).forEach(payload -> payload.forEach(field -> {
+            if (!merged.containsKey(field.getKey())) {
+                merged.put(field.getKey(), field.getValue());
+            }
+        }));
+        Utils.fireJsonResponse(request, response, finalStatusCode.applyAsInt(statusCodes), merged.getMap());
+    }
+
+}
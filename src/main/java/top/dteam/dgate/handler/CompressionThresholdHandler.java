@@ -0,0 +1,54 @@
+package top.dteam.dgate.handler;
+
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.ext.web.RoutingContext;
+import top.dteam.dgate.config.CompressionConfig;
+import top.dteam.dgate.utils.Utils;
+
+/**
+ * The listener compresses every response it is allowed to, this handler opts out those
+ * too small to be worth it, or whose content is compressed already such as images.
+ * Responses carrying a Content-Encoding, e.g. relayed ones the upstream compressed,
+ * are left alone and never compressed twice.
+ * <p>
+ * Whether the listener compresses a response depends on the client, so the ETags of the
+ * responses it is left to encode, 304s included, are made weak.
+ */
+public class CompressionThresholdHandler implements Handler<RoutingContext> {
+
+    private CompressionConfig compression;
+
+    public CompressionThresholdHandler(CompressionConfig compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public void handle(RoutingContext routingContext) {
+        routingContext.addHeadersEndHandler(end -> {
+            MultiMap headers = routingContext.response().headers();
+            if (!headers.contains(HttpHeaders.CONTENT_ENCODING)) {
+                if (headers.contains(HttpHeaders.ETAG)) {
+                    headers.set(HttpHeaders.ETAG, Utils.weakEtag(headers.get(HttpHeaders.ETAG)));
+                }
+                if (!worthCompressing(headers)) {
+                    headers.set(HttpHeaders.CONTENT_ENCODING, HttpHeaders.IDENTITY);
+                }
+            }
+        });
+
+        routingContext.next();
+    }
+
+    private boolean worthCompressing(MultiMap headers) {
+        if (!CompressionConfig.isCompressible(headers.get(HttpHeaders.CONTENT_TYPE))) {
+            return false;
+        }
+
+        // unknown for chunked responses, which are usually large
+        String contentLength = headers.get(HttpHeaders.CONTENT_LENGTH);
+        return contentLength == null || Long.parseLong(contentLength) >= compression.getMinSize();
+    }
+
+}
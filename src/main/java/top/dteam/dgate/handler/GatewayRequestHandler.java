@@ -5,22 +5,27 @@ import io.vertx.core.Vertx;
 import io.vertx.ext.auth.jwt.JWTAuth;
 import io.vertx.ext.web.RoutingContext;
 import top.dteam.dgate.config.*;
+import top.dteam.dgate.utils.RequestUtils;
 
 public interface GatewayRequestHandler extends Handler<RoutingContext> {
 
     GatewayRequestHandler nameOfApiGateway(String nameOfApiGateway);
 
     static GatewayRequestHandler create(Vertx vertx, UrlConfig urlConfig, JWTAuth jwtAuth) {
+        return create(vertx, urlConfig, jwtAuth, new RequestUtils(vertx));
+    }
+
+    static GatewayRequestHandler create(Vertx vertx, UrlConfig urlConfig, JWTAuth jwtAuth, RequestUtils requestUtils) {
         if (ProxyUrlConfig.class == urlConfig.getClass()) {
             if (jwtAuth == null) {
-                return new ProxyHandler(vertx, (ProxyUrlConfig) urlConfig);
+                return new ProxyHandler(vertx, (ProxyUrlConfig) urlConfig, requestUtils);
             } else {
-                return new LoginHandler(vertx, (ProxyUrlConfig) urlConfig, jwtAuth);
+                return new LoginHandler(vertx, (ProxyUrlConfig) urlConfig, jwtAuth, requestUtils);
             }
         } else if (MockUrlConfig.class == urlConfig.getClass()) {
             return new MockHandler(vertx, (MockUrlConfig) urlConfig);
         } else if (RelayUrlConfig.class == urlConfig.getClass()) {
-            return new RelayHandler(vertx, (RelayUrlConfig) urlConfig);
+            return new RelayHandler(vertx, (RelayUrlConfig) urlConfig, requestUtils);
         } else {
             throw new InvalidConfiguriationException(String.format("Unknown URL Config Type: %s", urlConfig.getClass()));
         }
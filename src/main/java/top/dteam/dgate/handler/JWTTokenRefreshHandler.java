@@ -1,6 +1,7 @@
 package top.dteam.dgate.handler;
 
 import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.RoutingContext;
 import top.dteam.dgate.utils.JWTTokenRefresher;
 import top.dteam.dgate.utils.Utils;
@@ -13,12 +14,10 @@ public class JWTTokenRefreshHandler implements Handler<RoutingContext> {
 
     private JWTTokenRefresher jwtTokenRefresher;
     private long refreshLimit;
-    private int refreshExpire;
 
-    public JWTTokenRefreshHandler(JWTTokenRefresher jwtTokenRefresher, long refreshLimit, int refreshExpire) {
+    public JWTTokenRefreshHandler(JWTTokenRefresher jwtTokenRefresher, long refreshLimit) {
         this.jwtTokenRefresher = jwtTokenRefresher;
         this.refreshLimit = refreshLimit;
-        this.refreshExpire = refreshExpire;
     }
 
     @Override
@@ -26,10 +25,10 @@ public class JWTTokenRefreshHandler implements Handler<RoutingContext> {
         String payload = Utils.getTokenFromHeader(routingContext.request());
 
         if (payload != null) {
-            jwtTokenRefresher.setPayload(payload);
-            if (jwtTokenRefresher.lessThan(refreshLimit)) {
+            JsonObject token = jwtTokenRefresher.decode(payload);
+            if (jwtTokenRefresher.lessThan(token, refreshLimit)) {
                 HashMap<String, Object> tokenMap = new HashMap<>();
-                tokenMap.put("token", jwtTokenRefresher.refresh(refreshExpire));
+                tokenMap.put("token", jwtTokenRefresher.refresh(token));
                 Utils.fireJsonResponse(routingContext.response(), 200, tokenMap);
             } else {
                 Utils.fireSingleMessageResponse(routingContext.response(), 401);
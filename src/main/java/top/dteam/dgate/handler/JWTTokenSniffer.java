@@ -1,20 +1,20 @@
 package top.dteam.dgate.handler;
 
 import io.vertx.core.Handler;
-import io.vertx.ext.jwt.JWT;
 import io.vertx.ext.web.RoutingContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import top.dteam.dgate.utils.Utils;
+import top.dteam.dgate.utils.VerifiedTokens;
 
 public class JWTTokenSniffer implements Handler<RoutingContext> {
 
     private static final Logger logger = LoggerFactory.getLogger(JWTTokenSniffer.class);
 
-    private JWT jwt;
+    private VerifiedTokens verifiedTokens;
 
-    public JWTTokenSniffer(JWT jwt) {
-        this.jwt = jwt;
+    public JWTTokenSniffer(VerifiedTokens verifiedTokens) {
+        this.verifiedTokens = verifiedTokens;
     }
 
     @Override
@@ -23,7 +23,7 @@ public class JWTTokenSniffer implements Handler<RoutingContext> {
 
         if (payload != null) {
             try {
-                routingContext.put("token", jwt.decode(payload));
+                routingContext.put("token", verifiedTokens.decode(payload));
             } catch (RuntimeException e) {
                 logger.error(e.getMessage());
             }
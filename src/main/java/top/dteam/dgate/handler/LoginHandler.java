@@ -4,6 +4,7 @@ import io.vertx.core.Vertx;
 import io.vertx.ext.auth.jwt.JWTAuth;
 import top.dteam.dgate.config.ProxyUrlConfig;
 import top.dteam.dgate.utils.JWTTokenGenerator;
+import top.dteam.dgate.utils.RequestUtils;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -13,7 +14,11 @@ public class LoginHandler extends ProxyHandler {
     private JWTTokenGenerator tokenGenerator;
 
     public LoginHandler(Vertx vertx, ProxyUrlConfig urlConfig, JWTAuth jwtAuth) {
-        super(vertx, urlConfig);
+        this(vertx, urlConfig, jwtAuth, new RequestUtils(vertx));
+    }
+
+    public LoginHandler(Vertx vertx, ProxyUrlConfig urlConfig, JWTAuth jwtAuth, RequestUtils requestUtils) {
+        super(vertx, urlConfig, requestUtils);
         this.tokenGenerator = new JWTTokenGenerator(jwtAuth);
     }
 
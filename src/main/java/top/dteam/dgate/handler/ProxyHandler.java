@@ -2,7 +2,12 @@ package top.dteam.dgate.handler;
 
 import groovy.lang.Closure;
 import io.vertx.circuitbreaker.CircuitBreaker;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
@@ -11,30 +16,56 @@ import org.slf4j.LoggerFactory;
 import top.dteam.dgate.config.ProxyUrlConfig;
 import top.dteam.dgate.config.UpstreamURL;
 import top.dteam.dgate.gateway.SimpleResponse;
+import top.dteam.dgate.monitor.ClosureMetrics;
+import top.dteam.dgate.utils.ClosureExecutor;
+import top.dteam.dgate.utils.RequestCoalescer;
 import top.dteam.dgate.utils.RequestUtils;
 import top.dteam.dgate.utils.Utils;
+import top.dteam.dgate.utils.cache.CacheKey;
+import top.dteam.dgate.utils.cache.CachedResponse;
 import top.dteam.dgate.utils.cache.ResponseHolder;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class ProxyHandler extends RequestHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(ProxyHandler.class);
 
     private List<UpstreamURL> upstreamURLs;
+    private Map<String, Integer> indexes;
     private Map<String, CircuitBreaker> circuitBreakers;
+    private Map<String, ResponseHolder> responseHolders;
+    private Map<String, RequestCoalescer<CacheKey, SimpleResponse>> coalescers;
     private RequestUtils requestUtils;
+    private ClosureExecutor closureExecutor;
 
     public ProxyHandler(Vertx vertx, ProxyUrlConfig urlConfig) {
+        this(vertx, urlConfig, new RequestUtils(vertx));
+    }
+
+    public ProxyHandler(Vertx vertx, ProxyUrlConfig urlConfig, RequestUtils requestUtils) {
         super(vertx, urlConfig);
 
-        upstreamURLs = urlConfig.getUpstreamURLs();
-        requestUtils = new RequestUtils(vertx);
+        this.upstreamURLs = urlConfig.getUpstreamURLs().stream().map(UpstreamURL::copy).collect(Collectors.toList());
+        this.requestUtils = requestUtils;
+
+        indexes = new HashMap<>();
+        for (int i = 0; i < upstreamURLs.size(); i++) {
+            if (upstreamURLs.get(i).getName() != null) {
+                indexes.put(upstreamURLs.get(i).getName(), i);
+            }
+        }
 
         circuitBreakers = new HashMap<>();
         upstreamURLs.forEach(upStreamURL -> {
@@ -49,16 +80,60 @@ public class ProxyHandler extends RequestHandler {
                     }
                 }
         );
+        // built once the name of the gateway, part of the cache names, is known
+        responseHolders = Collections.emptyMap();
+
+        coalescers = new HashMap<>();
+        upstreamURLs.stream().filter(upstreamURL -> upstreamURL.getExpires() > 0).forEach(upstreamURL ->
+                coalescers.put(upstreamURL.toString(),
+                        RequestCoalescer.boundedBy(vertx, upstreamURL.getCircuitBreaker())));
+
+        if (upstreamURLs.stream().anyMatch(UpstreamURL::isBlocking)) {
+            closureExecutor = new ClosureExecutor(vertx, urlConfig.getWorkerPool());
+        }
+    }
+
+    @Override
+    public GatewayRequestHandler nameOfApiGateway(String nameOfApiGateway) {
+        super.nameOfApiGateway(nameOfApiGateway);
+        buildResponseHolders();
+        return this;
     }
 
     @Override
     protected void processRequestBody(HttpServerRequest request, HttpServerResponse response, JsonObject body) {
-        List<CompletableFuture<SimpleResponse>> completableFutures = new ArrayList<>();
-        upstreamURLs.forEach(upStreamURL -> {
-            CompletableFuture<SimpleResponse> completableFuture = new CompletableFuture<>();
-            partialRequest(request, upStreamURL, body, completableFuture);
-            completableFutures.add(completableFuture);
-        });
+        processRequestBody(request, response, body, null);
+    }
+
+    @Override
+    protected void processRequestBody(HttpServerRequest request, HttpServerResponse response, JsonObject body,
+                                      Buffer rawBody) {
+        Buffer forwardedBody = ((ProxyUrlConfig) urlConfig).isRawBody() ? rawBody : null;
+        List<CompletableFuture<SimpleResponse>> completableFutures = upstreamURLs.stream()
+                .map(upStreamURL -> new CompletableFuture<SimpleResponse>()).collect(Collectors.toList());
+        for (int i = 0; i < upstreamURLs.size(); i++) {
+            UpstreamURL upStreamURL = upstreamURLs.get(i);
+            if (upStreamURL.getDependsOn().isEmpty()) {
+                // the before closure may change the params, which then have to be encoded again
+                partialRequest(request, upStreamURL, body, upStreamURL.getBefore() == null ? forwardedBody : null,
+                        completableFutures.get(i));
+            } else {
+                partialRequestAfterDependencies(request, upStreamURL, body, completableFutures,
+                        completableFutures.get(i));
+            }
+        }
+        applyDeadline(completableFutures);
+
+        if (((ProxyUrlConfig) urlConfig).isStreaming() && completableFutures.size() > 1) {
+            CompositeResponseWriter writer = new CompositeResponseWriter(request, response, completableFutures.size(),
+                    this::finalStatusCode);
+            for (int i = 0; i < completableFutures.size(); i++) {
+                UpstreamURL upStream = upstreamURLs.get(i);
+                completableFutures.get(i).whenComplete((simpleResponse, throwable) ->
+                        writer.write(throwable == null ? simpleResponse : failed(upStream, throwable)));
+            }
+            return;
+        }
 
         List<Integer> statusCodes = new ArrayList<>();
         AtomicInteger count = new AtomicInteger(completableFutures.size());
@@ -69,14 +144,14 @@ public class ProxyHandler extends RequestHandler {
                 payload.mergeIn(simpleResponse.getPayload());
                 statusCodes.add(simpleResponse.getStatusCode());
                 if (count.decrementAndGet() == 0) {
-                    Utils.fireJsonResponse(response, finalStatusCode(statusCodes)
+                    Utils.fireJsonResponse(request, response, finalStatusCode(statusCodes)
                             , payload.getMap());
                 }
             }).exceptionally(throwable -> {
                 payload.put(upStream.toString(), throwable);
                 statusCodes.add(500);
                 if (count.decrementAndGet() == 0) {
-                    Utils.fireJsonResponse(response, finalStatusCode(statusCodes), payload.getMap());
+                    Utils.fireJsonResponse(request, response, finalStatusCode(statusCodes), payload.getMap());
                 }
                 return null;
             });
@@ -84,52 +159,106 @@ public class ProxyHandler extends RequestHandler {
     }
 
     private void partialRequest(HttpServerRequest clientRequest, UpstreamURL upstreamURL, JsonObject params,
-                                CompletableFuture<SimpleResponse> completableFuture) {
+                                Buffer rawBody, CompletableFuture<SimpleResponse> completableFuture) {
         try {
             String requestURI = upstreamURL.resolve(params);
 
-            if (isResponseCached(requestURI, upstreamURL, params.getJsonObject("token"))) {
+            CacheKey cacheKey = upstreamURL.getExpires() > 0 ? cacheKey(clientRequest, requestURI, params) : null;
+
+            ResponseHolder responseHolder = cacheKey != null ? responseHolders.get(upstreamURL.toString()) : null;
+            if (responseHolder == null) {
+                partialRequest(clientRequest, upstreamURL, params, rawBody, requestURI, null, null, null,
+                        completableFuture);
+                return;
+            }
+
+            responseHolder.get(cacheKey, cached -> {
+                if (cached.failed()) {
+                    logger.warn("Looking up response cache for {}{}{} failed: {}"
+                            , nameOfApiGateway, urlConfig.getUrl(), requestURI, cached.cause().getMessage());
+                }
+                partialRequest(clientRequest, upstreamURL, params, rawBody, requestURI, responseHolder, cacheKey,
+                        cached.succeeded() ? cached.result() : null, completableFuture);
+            });
+        } catch (Exception e) {
+            completableFuture.complete(failedRequest(e));
+        }
+    }
+
+    private void partialRequest(HttpServerRequest clientRequest, UpstreamURL upstreamURL, JsonObject params,
+                                Buffer rawBody, String requestURI, ResponseHolder responseHolder, CacheKey cacheKey,
+                                CachedResponse cachedResponse, CompletableFuture<SimpleResponse> completableFuture) {
+        try {
+            if (cachedResponse != null && responseHolder.isFresh(cachedResponse)) {
                 logger.info("Found response cache for {}{}{}"
                         , nameOfApiGateway, urlConfig.getUrl(), requestURI);
-                SimpleResponse simpleResponse = new SimpleResponse();
-                simpleResponse.setStatusCode(200);
-                simpleResponse.setPayload(getResponseFromCache(requestURI
-                        , upstreamURL, params.getJsonObject("token")));
-
-                completableFuture.complete(simpleResponse);
+                completableFuture.complete(responseFromCache(cachedResponse));
 
                 return;
             }
 
             CircuitBreaker circuitBreaker = circuitBreakers.get(upstreamURL.toString());
-            circuitBreaker.execute(future -> {
-                Map<String, Object> beforeContext = createBeforeContext();
-                if (upstreamURL.getBefore() != null && beforeContext != null) {
-                    upstreamURL.getBefore().setDelegate(beforeContext);
+            Handler<Promise<SimpleResponse>> call = promise -> circuitBreaker.<SimpleResponse>execute(future ->
+                    // params are shared by all upstreamURLs of the url, a worker thread gets its own copy
+                    transform(upstreamURL, ClosureMetrics.BEFORE, upstreamURL.getBefore(), this::createBeforeContext,
+                            upstreamURL.isBlocking() ? params.copy() : params, before -> {
+                                if (before.failed()) {
+                                    refuseOrFail(future, before.cause(), requestURI);
+                                    return;
+                                }
+
+                                requestUtils.request(upstreamURL.httpVersion(), clientRequest.method(),
+                                        upstreamURL.getHost(), upstreamURL.getPort(), requestURI,
+                                        before.result(), rawBody, clientRequest,
+                                        cachedResponse != null ? cachedResponse.conditionalHeaders() : Collections.emptyMap(),
+                                        simpleResponse -> {
+                                            // the cached payload has been through the after handler already
+                                            if (simpleResponse.getStatusCode() == 304 && cachedResponse != null) {
+                                                future.tryComplete(responseFromCache(cachedResponse));
+                                                return;
+                                            }
+
+                                            transform(upstreamURL, ClosureMetrics.AFTER, upstreamURL.getAfter(),
+                                                    this::createAfterContext, simpleResponse, after -> {
+                                                        if (after.succeeded()) {
+                                                            future.tryComplete(after.result());
+                                                        } else {
+                                                            refuseOrFail(future, after.cause(), requestURI);
+                                                        }
+                                                    });
+                                        });
+                            })
+            ).setHandler(result -> {
+                if (result.succeeded() && result.result().getStatusCode() == 200 && responseHolder != null) {
+                    logger.info("Put response cache for {}/{}{}"
+                            , nameOfApiGateway, urlConfig.getUrl(), requestURI);
+                    responseHolder.put(cacheKey, CachedResponse.of(result.result()));
                 }
-                requestUtils.request(clientRequest.method(),
-                        upstreamURL.getHost(), upstreamURL.getPort(), requestURI,
-                        processParamsIfBeforeHandlerExists(upstreamURL.getBefore(), params), clientRequest,
-                        simpleResponse -> {
-                            Map<String, Object> afterContext = createAfterContext();
-                            if (upstreamURL.getAfter() != null && afterContext != null) {
-                                upstreamURL.getAfter().setDelegate(afterContext);
-                            }
-                            future.complete(processResponseIfAfterHandlerExists(upstreamURL.getAfter(), simpleResponse));
-                        });
-            }).setHandler(result -> {
-                if (result.succeeded()) {
-                    SimpleResponse simpleResponse = (SimpleResponse) result.result();
-                    completableFuture.complete(simpleResponse);
+                promise.handle(result);
+            });
+
+            if (cachedResponse != null && responseHolder.isRevalidatable(cachedResponse)) {
+                logger.info("Found stale response cache for {}{}{}, revalidating"
+                        , nameOfApiGateway, urlConfig.getUrl(), requestURI);
+                completableFuture.complete(responseFromCache(cachedResponse));
 
-                    if (upstreamURL.getExpires() > 0) {
-                        logger.info("Put response cache for {}/{}{}"
-                                , nameOfApiGateway, urlConfig.getUrl(), requestURI);
-                        putResponseToCache(requestURI, upstreamURL
-                                , params.getJsonObject("token")
-                                , simpleResponse.getPayload()
-                                , upstreamURL.getExpires());
+                coalescers.get(upstreamURL.toString()).execute(clientRequest.method(), cacheKey, call, result -> {
+                    if (result.failed()) {
+                        logger.warn("Revalidating response cache for {}{}{} failed: {}"
+                                , nameOfApiGateway, urlConfig.getUrl(), requestURI, result.cause().getMessage());
                     }
+                });
+
+                return;
+            }
+
+            Handler<AsyncResult<SimpleResponse>> handler = result -> {
+                if (isUpstreamError(result) && cachedResponse != null && responseHolder.isUsableOnError(cachedResponse)) {
+                    logger.warn("Upstream of {}{}{} failed, serving stale response cache"
+                            , nameOfApiGateway, urlConfig.getUrl(), requestURI);
+                    completableFuture.complete(responseFromCache(cachedResponse));
+                } else if (result.succeeded()) {
+                    completableFuture.complete(result.result());
                 } else {
                     logger.error("CB[{}] execution failed, cause: ", circuitBreaker.name(), result.cause());
 
@@ -141,18 +270,65 @@ public class ProxyHandler extends RequestHandler {
 
                     completableFuture.complete(simpleResponse);
                 }
-            });
+            };
+
+            // concurrent misses of the same cache entry share one upstream call
+            if (cacheKey != null) {
+                coalescers.get(upstreamURL.toString()).execute(clientRequest.method(), cacheKey, call, handler);
+            } else {
+                Promise<SimpleResponse> promise = Promise.promise();
+                promise.future().setHandler(handler);
+                call.handle(promise);
+            }
         } catch (Exception e) {
-            logger.error("Request to upstream failed: ", e);
+            completableFuture.complete(failedRequest(e));
+        }
+    }
 
-            SimpleResponse simpleResponse = new SimpleResponse();
-            JsonObject error = new JsonObject();
-            error.put("error", e.getMessage());
-            simpleResponse.setPayload(error);
-            simpleResponse.setStatusCode(500);
+    private SimpleResponse failedRequest(Exception e) {
+        logger.error("Request to upstream failed: ", e);
 
-            completableFuture.complete(simpleResponse);
-        }
+        SimpleResponse simpleResponse = new SimpleResponse();
+        JsonObject error = new JsonObject();
+        error.put("error", e.getMessage());
+        simpleResponse.setPayload(error);
+        simpleResponse.setStatusCode(500);
+        return simpleResponse;
+    }
+
+    /**
+     * Calls upstreamURL once all of its dependencies answered, with the params taken from their payloads.
+     * The dependencies are part of the response as well, a failed one fails upstreamURL without calling it.
+     */
+    private void partialRequestAfterDependencies(HttpServerRequest clientRequest, UpstreamURL upstreamURL,
+                                                 JsonObject params,
+                                                 List<CompletableFuture<SimpleResponse>> completableFutures,
+                                                 CompletableFuture<SimpleResponse> completableFuture) {
+        List<String> names = upstreamURL.getDependsOn();
+        List<CompletableFuture<SimpleResponse>> dependencies = names.stream()
+                .map(name -> completableFutures.get(indexes.get(name))).collect(Collectors.toList());
+        CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, throwable) -> {
+            // missed the deadline, nothing is waiting for it anymore
+            if (completableFuture.isDone()) {
+                return;
+            }
+
+            Map<String, JsonObject> results = new HashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                SimpleResponse dependency = dependencies.get(i).isCompletedExceptionally() ?
+                        null : dependencies.get(i).join();
+                if (dependency == null || dependency.getStatusCode() < 200 || dependency.getStatusCode() >= 300) {
+                    logger.warn("{} of {}{} is not called, {} failed"
+                            , upstreamURL, nameOfApiGateway, urlConfig.getUrl(), names.get(i));
+                    completableFuture.complete(dependencyFailed(upstreamURL, names.get(i)));
+                    return;
+                }
+                results.put(names.get(i), dependency.getPayload());
+            }
+
+            partialRequest(clientRequest, upstreamURL, upstreamURL.withDependencies(params, results), null,
+                    completableFuture);
+        });
     }
 
     protected Map<String, Object> createBeforeContext() {
@@ -163,35 +339,144 @@ public class ProxyHandler extends RequestHandler {
         return null;
     }
 
-    private JsonObject processParamsIfBeforeHandlerExists(Closure<JsonObject> before, JsonObject defaultValue) {
-        JsonObject params = defaultValue;
-        if (before != null) {
-            try {
-                params = before.call(params);
-            } catch (Exception e) {
-                logger.error("Before handler got exception: ", e);
-                throw e;
+    /**
+     * Passes value through the before or after closure of upstreamURL if there is one, on the worker
+     * pool for `blocking` upstreamURLs, otherwise right here on the event loop.
+     */
+    private <T> void transform(UpstreamURL upstreamURL, String name, Closure<T> closure,
+                               Supplier<Map<String, Object>> context, T value, Handler<AsyncResult<T>> handler) {
+        if (closure == null) {
+            handler.handle(Future.succeededFuture(value));
+            return;
+        }
+
+        // created here, subclasses need not make their contexts thread safe
+        Closure<T> bound = withDelegate(closure, context.get());
+        if (upstreamURL.isBlocking()) {
+            closureExecutor.execute(() -> callClosure(name, bound, value, false), handler);
+            return;
+        }
+
+        T result;
+        try {
+            result = callClosure(name, bound, value, true);
+        } catch (Exception e) {
+            handler.handle(Future.failedFuture(e));
+            return;
+        }
+        handler.handle(Future.succeededFuture(result));
+    }
+
+    private <T> T callClosure(String name, Closure<T> closure, T value, boolean onEventLoop) {
+        long start = System.nanoTime();
+        try {
+            return closure.call(value);
+        } catch (Exception e) {
+            logger.error("{} handler of {}{} got exception: ", name, nameOfApiGateway, urlConfig.getUrl(), e);
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            boolean blocked = onEventLoop &&
+                    elapsed > TimeUnit.MILLISECONDS.toNanos(urlConfig.getWorkerPool().getBlockedThreshold());
+            if (blocked) {
+                logger.warn("{} handler of {}{} blocked the event loop for {} ms, consider `blocking: true`",
+                        name, nameOfApiGateway, urlConfig.getUrl(), TimeUnit.NANOSECONDS.toMillis(elapsed));
             }
+            ClosureMetrics.record(nameOfApiGateway, urlConfig.getUrl(), name, elapsed, blocked);
         }
-        return params;
     }
 
-    private SimpleResponse processResponseIfAfterHandlerExists(Closure<SimpleResponse> after, SimpleResponse defaultValue) {
-        SimpleResponse result = defaultValue;
-        if (after != null) {
-            try {
-                result = after.call(result);
-            } catch (Exception e) {
-                logger.error("After handler got exception: ", e);
-                throw e;
+    /**
+     * Parts still missing at the deadline are completed with a marker, so that the response goes out
+     * with what has arrived. The late results are still cached, they just can't complete the parts again.
+     * Only the pending parts are kept for the timer, so that a streamed part can be dropped once written.
+     */
+    private void applyDeadline(List<CompletableFuture<SimpleResponse>> completableFutures) {
+        long deadline = ((ProxyUrlConfig) urlConfig).getDeadline();
+        if (deadline <= 0) {
+            return;
+        }
+
+        Map<Integer, CompletableFuture<SimpleResponse>> pending = new ConcurrentHashMap<>();
+        for (int i = 0; i < completableFutures.size(); i++) {
+            pending.put(i, completableFutures.get(i));
+        }
+        long timer = vertx.setTimer(deadline, tid -> pending.forEach((i, completableFuture) -> {
+            if (completableFuture.complete(missing(upstreamURLs.get(i), deadline))) {
+                logger.warn("{} of {}{} missed the deadline of {} ms"
+                        , upstreamURLs.get(i), nameOfApiGateway, urlConfig.getUrl(), deadline);
             }
+        }));
+        for (int i = 0; i < completableFutures.size(); i++) {
+            int index = i;
+            completableFutures.get(i).whenComplete((simpleResponse, throwable) -> {
+                pending.remove(index);
+                if (pending.isEmpty()) {
+                    vertx.cancelTimer(timer);
+                }
+            });
         }
-        return result;
+    }
+
+    private SimpleResponse missing(UpstreamURL upstreamURL, long deadline) {
+        SimpleResponse simpleResponse = new SimpleResponse();
+        simpleResponse.setPayload(new JsonObject().put(upstreamURL.toString(),
+                new JsonObject().put("error", String.format("No response within the deadline of %d ms.", deadline))));
+        simpleResponse.setStatusCode(504);
+        return simpleResponse;
+    }
+
+    private SimpleResponse dependencyFailed(UpstreamURL upstreamURL, String dependency) {
+        SimpleResponse simpleResponse = new SimpleResponse();
+        simpleResponse.setPayload(new JsonObject().put(upstreamURL.toString(),
+                new JsonObject().put("error", String.format("Depends on '%s', which failed.", dependency))));
+        simpleResponse.setStatusCode(424);
+        return simpleResponse;
+    }
+
+    private SimpleResponse failed(UpstreamURL upstreamURL, Throwable throwable) {
+        SimpleResponse simpleResponse = new SimpleResponse();
+        simpleResponse.setPayload(new JsonObject().put(upstreamURL.toString(), String.valueOf(throwable.getMessage())));
+        simpleResponse.setStatusCode(500);
+        return simpleResponse;
+    }
+
+    // a full worker pool is answered with 503, an overloaded gateway says nothing about the upstream
+    private void refuseOrFail(Promise<SimpleResponse> future, Throwable cause, String requestURI) {
+        if (cause instanceof RejectedExecutionException) {
+            logger.warn("Worker pool of {} is full, refusing {}{}", nameOfApiGateway, urlConfig.getUrl(), requestURI);
+            future.tryComplete(overloaded());
+        } else {
+            future.tryFail(cause);
+        }
+    }
+
+    private SimpleResponse overloaded() {
+        SimpleResponse simpleResponse = new SimpleResponse();
+        simpleResponse.setPayload(new JsonObject().put("error", "Too many requests are waiting for the worker pool."));
+        simpleResponse.setStatusCode(503);
+        return simpleResponse;
+    }
+
+    // the closure is shared by all requests of this handler, its delegate is only set on a clone of it
+    @SuppressWarnings("unchecked")
+    private static <T> Closure<T> withDelegate(Closure<T> closure, Map<String, Object> delegate) {
+        if (delegate == null) {
+            return closure;
+        }
+
+        Closure<T> bound = (Closure<T>) closure.clone();
+        bound.setDelegate(delegate);
+        return bound;
     }
 
     private int finalStatusCode(List<Integer> statusCodes) {
         if (statusCodes.stream().allMatch(statusCode -> statusCode >= 200 && statusCode < 300)) {
             return 200;
+        } else if (statusCodes.stream().allMatch(statusCode -> statusCode == 503)) {
+            return 503;
+        } else if (statusCodes.stream().allMatch(statusCode -> statusCode == 504)) {
+            return 504;
         } else if (statusCodes.stream().allMatch(statusCode -> statusCode >= 400)) {
             return 500;
         } else {
@@ -199,25 +484,33 @@ public class ProxyHandler extends RequestHandler {
         }
     }
 
-    private void putResponseToCache(String requestURI, UpstreamURL upstreamURL
-            , JsonObject token, JsonObject payload, int expires) {
-        ResponseHolder.put(nameOfApiGateway, urlConfig.getUrl()
-                , upstreamURL.getHost(), upstreamURL.getPort(), upstreamURL.getUrl()
-                , requestURI, token, payload, expires);
+    private void buildResponseHolders() {
+        responseHolders = new HashMap<>();
+        upstreamURLs.stream().filter(upstreamURL -> upstreamURL.getExpires() > 0).forEach(upstreamURL ->
+                responseHolders.put(upstreamURL.toString(), ResponseHolder.of(nameOfApiGateway, urlConfig.getUrl()
+                        , upstreamURL.getHost(), upstreamURL.getPort(), upstreamURL.getUrl()
+                        , upstreamURL.getExpires(), upstreamURL.getStaleWhileRevalidate()
+                        , upstreamURL.getStaleIfError(), urlConfig.getCacheWeight(), urlConfig.getCache())));
+    }
+
+    private CacheKey cacheKey(HttpServerRequest clientRequest, String requestURI, JsonObject params) {
+        JsonObject token = params.getJsonObject("token");
+        return urlConfig.getCacheKey() != null ?
+                CacheKey.of(requestURI, urlConfig.getCacheKey(), params::getValue, clientRequest.headers(), token) :
+                CacheKey.of(requestURI, token);
     }
 
-    private boolean isResponseCached(String requestURI
-            , UpstreamURL upstreamURL, JsonObject token) {
-        return upstreamURL.getExpires() > 0 &&
-                ResponseHolder.containsCacheEntry(nameOfApiGateway, urlConfig.getUrl()
-                        , upstreamURL.getHost(), upstreamURL.getPort()
-                        , upstreamURL.getUrl(), requestURI, token);
+    private SimpleResponse responseFromCache(CachedResponse cachedResponse) {
+        SimpleResponse simpleResponse = new SimpleResponse();
+        simpleResponse.setStatusCode(cachedResponse.getStatusCode());
+        simpleResponse.setPayload(cachedResponse.getPayload());
+        simpleResponse.setCacheTags(cachedResponse.getTags());
+        simpleResponse.setEtag(cachedResponse.getUpstreamEtag());
+        simpleResponse.setLastModified(cachedResponse.getUpstreamLastModified());
+        return simpleResponse;
     }
 
-    private JsonObject getResponseFromCache(String requestURI
-            , UpstreamURL upstreamURL, JsonObject token) {
-        return ResponseHolder.get(nameOfApiGateway, urlConfig.getUrl()
-                , upstreamURL.getHost(), upstreamURL.getPort()
-                , upstreamURL.getUrl(), requestURI, token);
+    private boolean isUpstreamError(AsyncResult<SimpleResponse> result) {
+        return result.failed() || result.result().getStatusCode() >= 500;
     }
 }
@@ -1,9 +1,16 @@
 package top.dteam.dgate.handler;
 
 import io.vertx.circuitbreaker.CircuitBreaker;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.HttpVersion;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.streams.Pump;
 import io.vertx.ext.web.RoutingContext;
@@ -11,12 +18,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import top.dteam.dgate.config.RelayTo;
 import top.dteam.dgate.config.RelayUrlConfig;
-import top.dteam.dgate.gateway.SimpleResponse;
+import top.dteam.dgate.utils.RequestCoalescer;
 import top.dteam.dgate.utils.RequestUtils;
 import top.dteam.dgate.utils.Utils;
+import top.dteam.dgate.utils.cache.CacheKey;
+import top.dteam.dgate.utils.cache.CachedResponse;
 import top.dteam.dgate.utils.cache.ResponseHolder;
 
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
 
 public class RelayHandler implements GatewayRequestHandler {
 
@@ -28,12 +39,19 @@ public class RelayHandler implements GatewayRequestHandler {
     private String nameOfApiGateway;
     private RequestUtils requestUtils;
     private CircuitBreaker circuitBreaker;
+    // built once the name of the gateway, part of the cache name, is known
+    private ResponseHolder responseHolder;
+    private RequestCoalescer<CacheKey, CachedResponse> coalescer;
 
     public RelayHandler(Vertx vertx, RelayUrlConfig urlConfig) {
+        this(vertx, urlConfig, new RequestUtils(vertx));
+    }
+
+    public RelayHandler(Vertx vertx, RelayUrlConfig urlConfig, RequestUtils requestUtils) {
         this.vertx = vertx;
         this.urlConfig = urlConfig;
         this.relayTo = urlConfig.getRelayTo();
-        this.requestUtils = new RequestUtils(vertx);
+        this.requestUtils = requestUtils;
         if (relayTo.getCircuitBreaker() != null) {
             this.circuitBreaker = CircuitBreaker.create(String.format("cb-%s-%s", urlConfig.getUrl(),
                     relayTo.toString()), vertx, relayTo.getCircuitBreaker());
@@ -41,6 +59,7 @@ public class RelayHandler implements GatewayRequestHandler {
             this.circuitBreaker = CircuitBreaker.create(String.format("cb-%s-%s", urlConfig.getUrl(),
                     relayTo.toString()), vertx);
         }
+        this.coalescer = RequestCoalescer.boundedBy(vertx, relayTo.getCircuitBreaker());
     }
 
     @Override
@@ -48,60 +67,153 @@ public class RelayHandler implements GatewayRequestHandler {
         HttpServerRequest request = routingContext.request();
         JsonObject token = getJwtTokenFromRoutingContext(routingContext);
 
-        if (isResponseCached(request.uri(), token)) {
-            logger.info("Found response cache for {}/{}"
-                    , nameOfApiGateway, urlConfig.getUrl());
-            SimpleResponse simpleResponse = new SimpleResponse();
-            simpleResponse.setStatusCode(200);
-            simpleResponse.setPayload(getResponseFromCache(request.uri(), token));
-
-            Utils.fireJsonResponse(routingContext.response(), simpleResponse.getStatusCode(),
-                    simpleResponse.getPayload().getMap());
-
+        // the cache lookup and the circuit breaker finish later on the context, hold the body until it is pumped
+        request.pause();
+        if (responseHolder == null) {
+            relayStreaming(routingContext);
             return;
         }
 
-        try {
-            circuitBreaker.execute(future -> {
-                HttpClientRequest relay = requestUtils.relay(request.method()
-                        , relayTo.getHost(), relayTo.getPort(), request.uri()
-                        , future::complete);
+        CacheKey cacheKey = cacheKey(request, token);
+        responseHolder.get(cacheKey, cached -> {
+            if (cached.failed()) {
+                logger.warn("Looking up response cache for {}{} failed: {}"
+                        , nameOfApiGateway, urlConfig.getUrl(), cached.cause().getMessage());
+            }
 
-                relay.headers().addAll(request.headers());
+            CachedResponse cachedResponse = cached.succeeded() ? cached.result() : null;
+            if (cachedResponse != null && responseHolder.isFresh(cachedResponse)) {
+                logger.info("Found response cache for {}/{}"
+                        , nameOfApiGateway, urlConfig.getUrl());
+                drainIfNotRelayed(request);
+                cachedResponse.writeTo(request, routingContext.response());
 
-                RequestUtils.putProxyHeaders(relay, request);
+                return;
+            }
 
-                putJwtTokenToHeader(relay, routingContext);
-                putNameOfApiGatewayInBody(relay, nameOfApiGateway);
+            relayWithCache(routingContext, cacheKey, cachedResponse);
+        });
+    }
 
-                Pump pump = Pump.pump(request, relay);
-                request.endHandler(end -> relay.end());
-                pump.start();
+    // Responses of cached routes are buffered whatever their content type, and kept as they are
+    // written to the client: status, cacheable headers and raw body. An entry past its expiry is
+    // revalidated with the validators of the upstream, whose 304 refreshes it without a body.
+    private void relayWithCache(RoutingContext routingContext, CacheKey cacheKey, CachedResponse cachedResponse) {
+        HttpServerRequest request = routingContext.request();
+
+        try {
+            Handler<Promise<CachedResponse>> call = promise -> circuitBreaker.<CachedResponse>execute(future -> {
+                HttpClientRequest relay = requestUtils.streamingRelay(relayTo.httpVersion(), request.method()
+                        , relayTo.getHost(), relayTo.getPort(), request.uri()
+                        , upstreamResponse -> {
+                            upstreamResponse.exceptionHandler(future::tryFail);
+                            upstreamResponse.bodyHandler(body ->
+                                    future.tryComplete(upstreamResponse.statusCode() == 304 && cachedResponse != null ?
+                                            cachedResponse.revalidated() :
+                                            CachedResponse.of(upstreamResponse, body).compressed(urlConfig.getCompression())));
+                            upstreamResponse.resume();
+                        });
+                relay.exceptionHandler(future::tryFail);
+
+                // the call is shared by coalesced requests, so none of them may make it conditional,
+                // and the body is stored gzipped whatever the client of this very call accepts
+                prepareRequest(routingContext, relay);
+                relay.headers().remove(HttpHeaders.IF_NONE_MATCH).remove(HttpHeaders.IF_MODIFIED_SINCE)
+                        .set(HttpHeaders.ACCEPT_ENCODING, RequestUtils.GZIP);
+                if (cachedResponse != null) {
+                    cachedResponse.conditionalHeaders().forEach(relay::putHeader);
+                }
+                pumpRequest(request, relay);
             }).setHandler(result -> {
-                SimpleResponse simpleResponse;
-                if (result.succeeded()) {
-                    simpleResponse = (SimpleResponse) result.result();
+                if (result.succeeded() && result.result().getStatusCode() == 200) {
+                    logger.info("Put response cache for {}{}."
+                            , nameOfApiGateway, urlConfig.getUrl());
 
-                    if (urlConfig.getExpires() > 0) {
-                        logger.info("Put response cache for {}{}."
-                                , nameOfApiGateway, urlConfig.getUrl());
+                    responseHolder.put(cacheKey, result.result());
+                }
+                promise.handle(result);
+            });
+
+            // the stale response is served right away, and this request revalidates it
+            if (cachedResponse != null && responseHolder.isRevalidatable(cachedResponse)) {
+                logger.info("Found stale response cache for {}/{}, revalidating"
+                        , nameOfApiGateway, urlConfig.getUrl());
+                cachedResponse.writeTo(request, routingContext.response());
 
-                        putResponseToCache(request.uri(), token
-                                , simpleResponse.getPayload()
-                                , urlConfig.getExpires());
+                coalescer.execute(request.method(), cacheKey, call, result -> {
+                    if (result.failed()) {
+                        logger.warn("Revalidating response cache for {}{} failed: {}"
+                                , nameOfApiGateway, urlConfig.getUrl(), result.cause().getMessage());
                     }
+                    drainIfNotRelayed(request);
+                });
+
+                return;
+            }
+
+            // concurrent misses of the same cache entry share one upstream call
+            coalescer.execute(request.method(), cacheKey, call, result -> {
+                drainIfNotRelayed(request);
+
+                if ((result.failed() || result.result().getStatusCode() >= 500)
+                        && cachedResponse != null && responseHolder.isUsableOnError(cachedResponse)) {
+                    logger.warn("Upstream of {}{} failed, serving stale response cache"
+                            , nameOfApiGateway, urlConfig.getUrl());
+                    cachedResponse.writeTo(request, routingContext.response());
+                } else if (result.succeeded()) {
+                    result.result().writeTo(request, routingContext.response());
                 } else {
                     logger.error("CB[{}] execution failed, cause: ", circuitBreaker.name(), result.cause());
 
-                    simpleResponse = new SimpleResponse();
-                    JsonObject error = new JsonObject();
+                    HashMap<String, Object> error = new HashMap<>();
                     error.put("error", result.cause().getMessage());
-                    simpleResponse.setPayload(error);
-                    simpleResponse.setStatusCode(500);
+                    Utils.fireJsonResponse(routingContext.response(), 500, error);
                 }
+            });
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            e.printStackTrace();
+            throw e;
+        }
+    }
+
+    // the body of a request answered by another one's call is never relayed, drop it
+    private void drainIfNotRelayed(HttpServerRequest request) {
+        if (!request.isEnded()) {
+            request.resume();
+        }
+    }
+
+    // The circuit breaker only guards until the upstream answers: the body of a large
+    // download may take much longer than its timeout, and is pumped with back-pressure.
+    private void relayStreaming(RoutingContext routingContext) {
+        HttpServerRequest request = routingContext.request();
+
+        try {
+            circuitBreaker.<HttpClientResponse>execute(future -> {
+                HttpClientRequest relay = requestUtils.streamingRelay(relayTo.httpVersion(), request.method()
+                        , relayTo.getHost(), relayTo.getPort(), request.uri()
+                        , upstreamResponse -> {
+                            if (!future.tryComplete(upstreamResponse)) {
+                                upstreamResponse.request().reset();
+                            }
+                        });
+                relay.exceptionHandler(future::tryFail);
 
-                Utils.fireJsonResponse(routingContext.response(), simpleResponse.getStatusCode(),
-                        simpleResponse.getPayload().getMap());
+                prepareRequest(routingContext, relay);
+                pumpRequest(request, relay);
+            }).setHandler(result -> {
+                if (result.succeeded()) {
+                    pumpResponse(result.result(), routingContext.response());
+                } else {
+                    // an open circuit never runs the command, so nothing pumps the body
+                    drainIfNotRelayed(request);
+                    logger.error("CB[{}] execution failed, cause: ", circuitBreaker.name(), result.cause());
+
+                    HashMap<String, Object> error = new HashMap<>();
+                    error.put("error", result.cause().getMessage());
+                    Utils.fireJsonResponse(routingContext.response(), 500, error);
+                }
             });
         } catch (Exception e) {
             logger.error(e.getMessage());
@@ -110,9 +222,54 @@ public class RelayHandler implements GatewayRequestHandler {
         }
     }
 
+    private void prepareRequest(RoutingContext routingContext, HttpClientRequest relay) {
+        HttpServerRequest request = routingContext.request();
+
+        RequestUtils.copyRequestHeaders(request, relay);
+        if (relayTo.httpVersion() != HttpVersion.HTTP_2 && request.headers().contains(HttpHeaders.TRANSFER_ENCODING)) {
+            relay.setChunked(true);
+        }
+
+        RequestUtils.putProxyHeaders(relay, request);
+
+        putJwtTokenToHeader(relay, routingContext);
+        putNameOfApiGatewayInBody(relay, nameOfApiGateway);
+    }
+
+    private void pumpRequest(HttpServerRequest request, HttpClientRequest relay) {
+        Pump pump = Pump.pump(request, relay);
+        request.endHandler(end -> relay.end());
+        pump.start();
+        request.resume();
+    }
+
+    private void pumpResponse(HttpClientResponse upstreamResponse, HttpServerResponse response) {
+        response.setStatusCode(upstreamResponse.statusCode())
+                .setStatusMessage(upstreamResponse.statusMessage());
+        RequestUtils.copyResponseHeaders(upstreamResponse, response);
+        if (!response.headers().contains(HttpHeaders.CONTENT_LENGTH)) {
+            response.setChunked(true);
+        }
+
+        upstreamResponse.exceptionHandler(throwable -> {
+            logger.error("Relaying response of {}{} failed: ", nameOfApiGateway, urlConfig.getUrl(), throwable);
+            response.close();
+        });
+        upstreamResponse.endHandler(end -> response.end());
+        response.closeHandler(close -> {
+            if (!response.ended()) {
+                upstreamResponse.request().reset();
+            }
+        });
+
+        Pump.pump(upstreamResponse, response).start();
+        upstreamResponse.resume();
+    }
+
     @Override
     public GatewayRequestHandler nameOfApiGateway(String nameOfApiGateway) {
         this.nameOfApiGateway = nameOfApiGateway;
+        buildResponseHolder();
         return this;
     }
 
@@ -142,18 +299,22 @@ public class RelayHandler implements GatewayRequestHandler {
         }
     }
 
-    private boolean isResponseCached(String requestURI, JsonObject token) {
-        return urlConfig.getExpires() > 0 &&
-                ResponseHolder.containsCacheEntry(nameOfApiGateway
-                        , urlConfig.getUrl(), requestURI, token);
-    }
+    private CacheKey cacheKey(HttpServerRequest request, JsonObject token) {
+        if (urlConfig.getCacheKey() == null) {
+            return CacheKey.of(request.uri(), token);
+        }
 
-    private JsonObject getResponseFromCache(String requestURI, JsonObject token) {
-        return ResponseHolder.get(nameOfApiGateway, urlConfig.getUrl(), requestURI, token);
+        MultiMap params = request.params();
+        return CacheKey.of(request.path(), urlConfig.getCacheKey(), name -> {
+            List<String> values = params.getAll(name);
+            return values.isEmpty() ? null : String.join(",", values);
+        }, request.headers(), token);
     }
 
-    private void putResponseToCache(String requestURI, JsonObject token
-            , JsonObject response, int expires) {
-        ResponseHolder.put(nameOfApiGateway, urlConfig.getUrl(), requestURI, token, response, expires);
+    private void buildResponseHolder() {
+        responseHolder = urlConfig.getExpires() > 0 ?
+                ResponseHolder.of(nameOfApiGateway, urlConfig.getUrl(), urlConfig.getExpires()
+                        , urlConfig.getStaleWhileRevalidate(), urlConfig.getStaleIfError()
+                        , urlConfig.getCacheWeight(), urlConfig.getCache()) : null;
     }
 }
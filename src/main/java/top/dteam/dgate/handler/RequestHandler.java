@@ -58,6 +58,15 @@ public abstract class RequestHandler implements GatewayRequestHandler {
 
     protected abstract void processRequestBody(HttpServerRequest request, HttpServerResponse response, JsonObject body);
 
+    /**
+     * rawBody is the request body as received, and is only given when no request param was merged
+     * into body, so that it can be forwarded without encoding body again.
+     */
+    protected void processRequestBody(HttpServerRequest request, HttpServerResponse response, JsonObject body,
+                                      Buffer rawBody) {
+        processRequestBody(request, response, body);
+    }
+
     private void verifyMethodsAllowed(RoutingContext routingContext) {
         if (allowedMethods() != null && !allowedMethods().isEmpty()) {
             if (allowedMethods().stream().noneMatch(method -> routingContext.request().method() == method)) {
@@ -95,13 +104,24 @@ public abstract class RequestHandler implements GatewayRequestHandler {
     }
 
     private JsonObject getBodyFromBuffer(Buffer buffer) {
-        if (buffer.toString().trim().length() == 0) {
+        if (isBlank(buffer)) {
             return new JsonObject();
         } else {
             return buffer.toJsonObject();
         }
     }
 
+    // like String.trim(), checked on the bytes without decoding the body into a String
+    private static boolean isBlank(Buffer buffer) {
+        for (int i = 0; i < buffer.length(); i++) {
+            byte b = buffer.getByte(i);
+            if (b < 0 || b > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void putJwtTokenInBody(JsonObject body, RoutingContext routingContext) {
         if (routingContext.user() != null) {
             JsonObject token = routingContext.user().principal();
@@ -129,11 +149,13 @@ public abstract class RequestHandler implements GatewayRequestHandler {
 
     private void processRequest(RoutingContext routingContext, Buffer buffer) {
         JsonObject body = getBodyFromBuffer(buffer);
-        mergeRequestParams(body, routingContext.request().params());
+        MultiMap params = routingContext.request().params();
+        Buffer rawBody = params == null || params.isEmpty() ? buffer : null;
+        mergeRequestParams(body, params);
         verifyRequiredExists(routingContext, body);
         putJwtTokenInBody(body, routingContext);
         putNameOfApiGatewayInBody(body);
 
-        processRequestBody(routingContext.request(), routingContext.response(), body);
+        processRequestBody(routingContext.request(), routingContext.response(), body, rawBody);
     }
 }
@@ -0,0 +1,66 @@
+package top.dteam.dgate.monitor;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent in the before/after closures of each url, summed over all instances of a gateway.
+ * Closures run on the event loop unless their upstreamURL is `blocking`, a slow one then delays
+ * every request of its instance and is counted as blocked.
+ */
+public class ClosureMetrics {
+
+    public static final String BEFORE = "before";
+    public static final String AFTER = "after";
+
+    private static final Map<String, Map<String, Timer>> gateways = new ConcurrentHashMap<>();
+
+    public static void record(String gateway, String url, String closure, long nanos, boolean blocked) {
+        gateways.computeIfAbsent(String.valueOf(gateway), key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(url + " " + closure, key -> new Timer())
+                .record(nanos, blocked);
+    }
+
+    public static JsonObject stats(String gateway) {
+        JsonObject stats = new JsonObject();
+        gateways.getOrDefault(gateway, new ConcurrentHashMap<>()).forEach((key, timer) -> {
+            int separator = key.lastIndexOf(' ');
+            String url = key.substring(0, separator);
+            if (!stats.containsKey(url)) {
+                stats.put(url, new JsonObject());
+            }
+            stats.getJsonObject(url).put(key.substring(separator + 1), timer.stats());
+        });
+        return stats;
+    }
+
+    private static class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+        private final LongAdder blocked = new LongAdder();
+
+        void record(long nanos, boolean blockedEventLoop) {
+            count.increment();
+            total.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+            if (blockedEventLoop) {
+                blocked.increment();
+            }
+        }
+
+        JsonObject stats() {
+            long invocations = count.sum();
+            return new JsonObject()
+                    .put("count", invocations)
+                    .put("avgMillis", invocations == 0 ? 0 : total.sum() / 1e6 / invocations)
+                    .put("maxMillis", max.get() / 1e6)
+                    .put("blocked", blocked.sum());
+        }
+    }
+
+}
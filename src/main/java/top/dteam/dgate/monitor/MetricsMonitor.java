@@ -0,0 +1,32 @@
+package top.dteam.dgate.monitor;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class MetricsMonitor extends AbstractVerticle {
+
+    public static final String ADDRESS = "dgate.metrics";
+    public static final long PUBLISH_INTERVAL = 10000;
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsMonitor.class);
+
+    private MessageConsumer<JsonObject> consumer;
+
+    @Override
+    public void start() {
+        consumer = vertx.eventBus().consumer(ADDRESS, message -> {
+            JsonObject body = message.body();
+            logger.debug("~~~~~ Gateway Metrics: gateway={}, instance={}, metrics={} ~~~~~\n",
+                    body.getString("gateway"), body.getString("instance"), body.encode());
+        });
+    }
+
+    @Override
+    public void stop() {
+        consumer.unregister();
+    }
+
+}
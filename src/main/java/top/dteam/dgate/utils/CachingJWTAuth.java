@@ -0,0 +1,51 @@
+package top.dteam.dgate.utils;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.auth.jwt.impl.JWTUser;
+import io.vertx.ext.jwt.JWTOptions;
+
+/**
+ * Authenticates the tokens found in {@link VerifiedTokens} without verifying them again, others
+ * are left to the wrapped provider and remembered once it accepted them.
+ */
+public class CachingJWTAuth implements JWTAuth {
+
+    private static final String PERMISSIONS_CLAIM_KEY = new JWTAuthOptions().getPermissionsClaimKey();
+
+    private JWTAuth jwtAuth;
+    private VerifiedTokens verifiedTokens;
+
+    public CachingJWTAuth(JWTAuth jwtAuth, VerifiedTokens verifiedTokens) {
+        this.jwtAuth = jwtAuth;
+        this.verifiedTokens = verifiedTokens;
+    }
+
+    @Override
+    public void authenticate(JsonObject authInfo, Handler<AsyncResult<User>> resultHandler) {
+        String token = authInfo.getString("jwt");
+        JsonObject payload = token == null ? null : verifiedTokens.verified(token);
+        if (payload != null) {
+            resultHandler.handle(Future.succeededFuture(new JWTUser(payload.copy(), PERMISSIONS_CLAIM_KEY)));
+            return;
+        }
+
+        jwtAuth.authenticate(authInfo, result -> {
+            if (result.succeeded() && token != null) {
+                verifiedTokens.put(token, result.result().principal());
+            }
+            resultHandler.handle(result);
+        });
+    }
+
+    @Override
+    public String generateToken(JsonObject claims, JWTOptions options) {
+        return jwtAuth.generateToken(claims, options);
+    }
+
+}
@@ -0,0 +1,76 @@
+package top.dteam.dgate.utils;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import top.dteam.dgate.config.WorkerPoolConfig;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the before/after closures of `blocking` upstreamURLs on a worker pool shared by all instances
+ * of a gateway, keeping expensive transforms off the event loops. The pool has no queue limit of its
+ * own, a closure beyond {@code queueSize} fails with a {@link RejectedExecutionException} instead of
+ * queueing.
+ */
+public class ClosureExecutor {
+
+    private static final String POOL_PREFIX = "dgate-closures-";
+    private static final Map<String, Depth> depths = new ConcurrentHashMap<>();
+
+    private WorkerExecutor executor;
+    private WorkerPoolConfig config;
+    private Depth depth;
+
+    public ClosureExecutor(Vertx vertx, WorkerPoolConfig config) {
+        this.config = config;
+        // closed with the verticle that created it
+        this.executor = vertx.createSharedWorkerExecutor(POOL_PREFIX + config.getName(), config.getPoolSize());
+        this.depth = depths.computeIfAbsent(String.valueOf(config.getName()), key -> new Depth());
+    }
+
+    public <T> void execute(Callable<T> closure, Handler<AsyncResult<T>> handler) {
+        // the slot is taken before the check, all instances of the gateway share the counter
+        if (depth.pending.incrementAndGet() > config.getQueueSize()) {
+            depth.pending.decrementAndGet();
+            depth.rejected.increment();
+            handler.handle(Future.failedFuture(new RejectedExecutionException(
+                    "Too many requests are waiting for the worker pool.")));
+            return;
+        }
+
+        executor.<T>executeBlocking(promise -> {
+            try {
+                promise.complete(closure.call());
+            } catch (Exception e) {
+                promise.fail(e);
+            }
+        }, false, result -> {
+            depth.pending.decrementAndGet();
+            handler.handle(result);
+        });
+    }
+
+    public static JsonObject stats(WorkerPoolConfig config) {
+        Depth depth = depths.get(String.valueOf(config.getName()));
+        return new JsonObject()
+                .put("poolSize", config.getPoolSize())
+                .put("queueSize", config.getQueueSize())
+                .put("pending", depth != null ? depth.pending.get() : 0)
+                .put("rejected", depth != null ? depth.rejected.sum() : 0);
+    }
+
+    private static class Depth {
+        private final AtomicInteger pending = new AtomicInteger();
+        private final LongAdder rejected = new LongAdder();
+    }
+
+}
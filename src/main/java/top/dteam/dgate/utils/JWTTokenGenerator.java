@@ -20,4 +20,8 @@ public class JWTTokenGenerator {
         return jwtAuth.generateToken(new JsonObject(payload), options);
     }
 
+    public String token(JsonObject payload, JWTOptions options) {
+        return jwtAuth.generateToken(payload, options);
+    }
+
 }
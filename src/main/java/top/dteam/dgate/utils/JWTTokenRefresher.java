@@ -3,33 +3,39 @@ package top.dteam.dgate.utils;
 import io.vertx.core.Vertx;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.jwt.JWT;
+import io.vertx.ext.jwt.JWTOptions;
 
+/**
+ * Keeps no state of the token being refreshed, so that one instance can serve concurrent refreshes.
+ */
 public class JWTTokenRefresher {
 
     private JWT jwt;
     private JWTTokenGenerator tokenGenerator;
-    private JsonObject payload;
+    private JWTOptions options;
 
-    public JWTTokenRefresher(Vertx vertx) {
+    public JWTTokenRefresher(Vertx vertx, int refreshExpire) {
         tokenGenerator = new JWTTokenGenerator(Utils.createAuthProvider(vertx));
         jwt = Utils.createJWT(vertx);
+        options = new JWTOptions().setExpiresInSeconds(refreshExpire);
     }
 
-    public void setPayload(String payload) {
-        this.payload = jwt.decode(payload);
+    public JsonObject decode(String token) {
+        return jwt.decode(token);
     }
 
-    public boolean lessThan(long refreshLimit) {
+    public boolean lessThan(JsonObject payload, long refreshLimit) {
         return ((System.currentTimeMillis() / 1000) - payload.getLong("exp")) <= refreshLimit;
     }
 
-    public String refresh(int refreshExpire) {
+    // payload is changed, it must be decoded for this refresh only
+    public String refresh(JsonObject payload) {
         payload.remove("exp");
         payload.remove("iat");
         payload.remove("nbf");
         payload.remove("aud");
         payload.remove("iss");
-        return tokenGenerator.token(payload.getMap(), refreshExpire);
+        return tokenGenerator.token(payload, options);
     }
 
 }
@@ -0,0 +1,97 @@
+package top.dteam.dgate.utils;
+
+import io.vertx.circuitbreaker.CircuitBreakerOptions;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collapses concurrent calls for the same key into one: the first caller runs the call and
+ * the others wait for its result. A waiter gives up after maxWait and runs the call itself.
+ * Calls of requests other than GET and HEAD are never collapsed, see {@link #execute(HttpMethod, Object, Handler, Handler)}.
+ * <p>
+ * Not thread safe: every handler owns its coalescer and only uses it from its own event loop.
+ */
+public class RequestCoalescer<K, T> {
+
+    private Vertx vertx;
+    private long maxWait;
+    private Map<K, List<Waiter<T>>> inFlight = new HashMap<>();
+
+    public RequestCoalescer(Vertx vertx, long maxWait) {
+        this.vertx = vertx;
+        this.maxWait = maxWait;
+    }
+
+    // waiters wait at most as long as the circuit breaker lets the shared call run
+    public static <K, T> RequestCoalescer<K, T> boundedBy(Vertx vertx, CircuitBreakerOptions options) {
+        long timeout = options != null && options.getTimeout() > 0 ?
+                options.getTimeout() : CircuitBreakerOptions.DEFAULT_TIMEOUT;
+        return new RequestCoalescer<>(vertx, timeout);
+    }
+
+    // keys are built without the request body, and other methods may change state upstream
+    public void execute(HttpMethod method, K key, Handler<Promise<T>> call, Handler<AsyncResult<T>> handler) {
+        if (method == HttpMethod.GET || method == HttpMethod.HEAD) {
+            execute(key, call, handler);
+        } else {
+            run(call, handler);
+        }
+    }
+
+    public void execute(K key, Handler<Promise<T>> call, Handler<AsyncResult<T>> handler) {
+        List<Waiter<T>> waiters = inFlight.get(key);
+        if (waiters != null) {
+            Waiter<T> waiter = new Waiter<>(handler);
+            waiter.timer = vertx.setTimer(maxWait, tid -> {
+                if (waiters.remove(waiter)) {
+                    run(call, handler);
+                }
+            });
+            waiters.add(waiter);
+            return;
+        }
+
+        List<Waiter<T>> newWaiters = new ArrayList<>();
+        inFlight.put(key, newWaiters);
+        run(call, result -> {
+            inFlight.remove(key, newWaiters);
+            handler.handle(result);
+            newWaiters.forEach(waiter -> {
+                vertx.cancelTimer(waiter.timer);
+                waiter.handler.handle(result);
+            });
+            newWaiters.clear();
+        });
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private void run(Handler<Promise<T>> call, Handler<AsyncResult<T>> handler) {
+        Promise<T> promise = Promise.promise();
+        promise.future().setHandler(handler);
+        try {
+            call.handle(promise);
+        } catch (Exception e) {
+            promise.tryFail(e);
+        }
+    }
+
+    private static class Waiter<T> {
+        private Handler<AsyncResult<T>> handler;
+        private long timer;
+
+        private Waiter(Handler<AsyncResult<T>> handler) {
+            this.handler = handler;
+        }
+    }
+}
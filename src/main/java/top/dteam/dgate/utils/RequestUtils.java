@@ -1,6 +1,7 @@
 package top.dteam.dgate.utils;
 
 import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.*;
@@ -14,20 +15,38 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class RequestUtils {
 
     public static final String JWT_HEADER = "dgate-jwt-token";
     public static final String API_GATEWAY_NAME_HEADER = "dgate-gateway";
+    // comma separated tags an upstream attaches to its response, to purge cached responses by tag
+    public static final String CACHE_TAGS_HEADER = "dgate-cache-tags";
+    public static final String GZIP = "gzip";
+
+    // see: https://tools.ietf.org/html/rfc7230#section-6.1
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-authenticate", "proxy-authorization",
+            "te", "trailer", "transfer-encoding", "upgrade"));
 
     private static final Logger logger = LoggerFactory.getLogger(RequestUtils.class);
 
-    private HttpClient httpClient;
+    private UpstreamClientRegistry upstreamClients;
 
     public RequestUtils(Vertx vertx) {
-        httpClient = vertx.createHttpClient();
+        this(new UpstreamClientRegistry(vertx, new HttpClientOptions()));
+    }
+
+    public RequestUtils(UpstreamClientRegistry upstreamClients) {
+        this.upstreamClients = upstreamClients;
     }
 
     public void get(String host, int port, String url, JsonObject data, Handler<SimpleResponse> handler) {
@@ -49,12 +68,42 @@ public class RequestUtils {
 
     public void request(HttpMethod method, String host, int port, String url
             , JsonObject data, HttpServerRequest clientRequest, Handler<SimpleResponse> handler) {
-        HttpClientRequest request = httpClient.request(method, port, host, url, defaultResponseHandler(handler))
-                .setChunked(true)
+        request(HttpVersion.HTTP_1_1, method, host, port, url, data, clientRequest, handler);
+    }
+
+    public void request(HttpVersion version, HttpMethod method, String host, int port, String url
+            , JsonObject data, HttpServerRequest clientRequest, Handler<SimpleResponse> handler) {
+        request(version, method, host, port, url, data, clientRequest, Collections.emptyMap(), handler);
+    }
+
+    public void request(HttpVersion version, HttpMethod method, String host, int port, String url
+            , JsonObject data, HttpServerRequest clientRequest, Map<String, String> headers
+            , Handler<SimpleResponse> handler) {
+        request(version, method, host, port, url, data, null, clientRequest, headers, handler);
+    }
+
+    /**
+     * The token and the name of the gateway in data always go in headers, and rawBody, when
+     * given, is sent instead of data as it is.
+     */
+    public void request(HttpVersion version, HttpMethod method, String host, int port, String url
+            , JsonObject data, Buffer rawBody, HttpServerRequest clientRequest, Map<String, String> headers
+            , Handler<SimpleResponse> handler) {
+        HttpClientRequest request = upstreamClients.client(version, host, port)
+                .request(method, port, host, url, defaultResponseHandler(handler))
                 .setFollowRedirects(true)
                 .putHeader("content-type", "application/json");
 
+        // HTTP/2 frames the body itself
+        if (version != HttpVersion.HTTP_2) {
+            request.setChunked(true);
+        }
+
         putProxyHeaders(request, clientRequest);
+        if (upstreamClients.acceptsCompression()) {
+            request.putHeader(HttpHeaders.ACCEPT_ENCODING, GZIP);
+        }
+        headers.forEach(request::putHeader);
 
         if (data.getJsonObject("token") != null) {
             request.putHeader(JWT_HEADER, Base64.getEncoder().encodeToString(data.getJsonObject("token").toString().getBytes()));
@@ -64,12 +113,16 @@ public class RequestUtils {
             request.putHeader(API_GATEWAY_NAME_HEADER, Base64.getEncoder().encodeToString(data.getString("nameOfApiGateway").getBytes()));
         }
 
-        request.end(data.toString());
+        if (rawBody != null) {
+            request.end(rawBody);
+        } else {
+            request.end(data.toString());
+        }
     }
 
     public void requestWithJwtToken(HttpMethod method, String host, int port, String url, JsonObject data, String token,
                                     Handler<SimpleResponse> handler) {
-        httpClient.request(method, port, host, url, defaultResponseHandler(handler))
+        upstreamClients.client(host, port).request(method, port, host, url, defaultResponseHandler(handler))
                 .setChunked(true)
                 .setFollowRedirects(true)
                 .putHeader("content-type", "application/json")
@@ -104,12 +157,53 @@ public class RequestUtils {
         }
     }
 
+    public static void copyRequestHeaders(HttpServerRequest clientRequest, HttpClientRequest proxyRequest) {
+        clientRequest.headers().forEach(header -> {
+            if (!HOP_BY_HOP_HEADERS.contains(header.getKey().toLowerCase())) {
+                proxyRequest.headers().add(header.getKey(), header.getValue());
+            }
+        });
+    }
+
+    public static void copyResponseHeaders(HttpClientResponse upstreamResponse, HttpServerResponse response) {
+        upstreamResponse.headers().forEach(header -> {
+            String name = header.getKey().toLowerCase();
+            if (!HOP_BY_HOP_HEADERS.contains(name) && !CACHE_TAGS_HEADER.equals(name)) {
+                response.headers().add(header.getKey(), header.getValue());
+            }
+        });
+    }
+
+    public static List<String> cacheTags(MultiMap headers) {
+        List<String> tags = new ArrayList<>();
+        headers.getAll(CACHE_TAGS_HEADER).forEach(value -> Arrays.stream(value.split(","))
+                .map(String::trim).filter(tag -> !tag.isEmpty()).forEach(tags::add));
+        return tags;
+    }
+
     public HttpClientRequest relay(HttpMethod method, String host, int port, String url, Handler<SimpleResponse> handler) {
-        return httpClient.request(method, port, host, url, defaultResponseHandler(handler));
+        return relay(HttpVersion.HTTP_1_1, method, host, port, url, handler);
+    }
+
+    public HttpClientRequest relay(HttpVersion version, HttpMethod method, String host, int port, String url,
+                                   Handler<SimpleResponse> handler) {
+        return upstreamClients.client(version, host, port).request(method, port, host, url, defaultResponseHandler(handler));
+    }
+
+    /**
+     * Unlike {@link #relay}, the upstream response is handed over paused and untouched,
+     * so that its body can be pumped to the client without being buffered.
+     */
+    public HttpClientRequest streamingRelay(HttpVersion version, HttpMethod method, String host, int port, String url,
+                                            Handler<HttpClientResponse> handler) {
+        return upstreamClients.client(version, host, port).request(method, port, host, url, response -> {
+            response.pause();
+            handler.handle(response);
+        });
     }
 
     public void upload(String file, String host, int port, String url, Handler<SimpleResponse> handler) {
-        HttpClientRequest request = httpClient.post(port, host, url, defaultResponseHandler(handler));
+        HttpClientRequest request = upstreamClients.client(host, port).post(port, host, url, defaultResponseHandler(handler));
         try {
             Buffer bodyBuffer = getBody(file, "file", "MyBoundary");
             request.putHeader("Content-Type", "multipart/form-data;boundary=MyBoundary")
@@ -122,7 +216,7 @@ public class RequestUtils {
     }
 
     public void form(JsonObject form, String host, int port, String url, Handler<SimpleResponse> handler) {
-        HttpClientRequest request = httpClient.post(port, host, url, defaultResponseHandler(handler));
+        HttpClientRequest request = upstreamClients.client(host, port).post(port, host, url, defaultResponseHandler(handler));
         Buffer bodyBuffer = formData(form);
         request.putHeader("Content-Type", "application/x-www-form-urlencoded")
                 .putHeader("Content-Length", String.valueOf(bodyBuffer.length()));
@@ -149,15 +243,23 @@ public class RequestUtils {
         return response -> {
             SimpleResponse simpleResponse = new SimpleResponse();
             simpleResponse.setStatusCode(response.statusCode());
+            simpleResponse.setCacheTags(cacheTags(response.headers()));
+            simpleResponse.setEtag(response.getHeader(HttpHeaders.ETAG));
+            simpleResponse.setLastModified(response.getHeader(HttpHeaders.LAST_MODIFIED));
             response.bodyHandler(totalBuffer -> {
                 if (totalBuffer.length() > 0) {
-                    simpleResponse.setPayload(totalBuffer.toJsonObject());
+                    simpleResponse.setPayload(isGzipped(response) ?
+                            Buffer.buffer(Utils.gunzip(totalBuffer.getBytes())).toJsonObject() : totalBuffer.toJsonObject());
                 }
                 handler.handle(simpleResponse);
             });
         };
     }
 
+    private static boolean isGzipped(HttpClientResponse response) {
+        return GZIP.equalsIgnoreCase(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+    }
+
     private Buffer getBody(String filename, String name, String boundary) throws IOException {
         Buffer buffer = Buffer.buffer();
         buffer.appendString(String.format("--%s\r\n", boundary));
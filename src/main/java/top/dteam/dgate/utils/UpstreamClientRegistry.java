@@ -0,0 +1,96 @@
+package top.dteam.dgate.utils;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One pooled HttpClient per upstream host:port, shared by all the routes of a gateway instance.
+ * Upstreams spoken to over h2c get their own client, multiplexing requests over a few connections.
+ * <p>
+ * The clients never decompress responses themselves, so that relayed bodies are passed through as
+ * the upstream encoded them, {@link RequestUtils} asks for and decodes compressed JSON bodies.
+ */
+public class UpstreamClientRegistry {
+
+    private static final String H2C_SUFFIX = "/h2c";
+
+    private Vertx vertx;
+    private HttpClientOptions options;
+    private Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    public UpstreamClientRegistry(Vertx vertx, HttpClientOptions options) {
+        this.vertx = vertx;
+        this.options = options;
+    }
+
+    public HttpClient client(String host, int port) {
+        return client(HttpVersion.HTTP_1_1, host, port);
+    }
+
+    public HttpClient client(HttpVersion version, String host, int port) {
+        Pool pool = pools.computeIfAbsent(key(version, host, port), key -> new Pool(createClient(version)));
+        pool.requests.incrementAndGet();
+        return pool.client;
+    }
+
+    public boolean acceptsCompression() {
+        return options.isTryUseCompression();
+    }
+
+    public JsonObject stats() {
+        JsonObject stats = new JsonObject();
+        pools.forEach((key, pool) -> {
+            int maxPoolSize = maxPoolSize(key);
+            stats.put(key, new JsonObject()
+                    .put("connections", pool.connections.get())
+                    .put("maxPoolSize", maxPoolSize)
+                    .put("utilisation", (double) pool.connections.get() / maxPoolSize)
+                    .put("requests", pool.requests.get()));
+        });
+        return stats;
+    }
+
+    public void close() {
+        pools.values().forEach(pool -> pool.client.close());
+        pools.clear();
+    }
+
+    private HttpClient createClient(HttpVersion version) {
+        HttpClientOptions clientOptions = new HttpClientOptions(options).setTryUseCompression(false);
+        if (version == HttpVersion.HTTP_2) {
+            // h2c with prior knowledge, no HTTP/1.1 upgrade round trip
+            clientOptions.setProtocolVersion(HttpVersion.HTTP_2).setHttp2ClearTextUpgrade(false);
+        }
+        return vertx.createHttpClient(clientOptions);
+    }
+
+    private int maxPoolSize(String key) {
+        return key.endsWith(H2C_SUFFIX) ? options.getHttp2MaxPoolSize() : options.getMaxPoolSize();
+    }
+
+    private static String key(HttpVersion version, String host, int port) {
+        return version == HttpVersion.HTTP_2 ? host + ":" + port + H2C_SUFFIX : host + ":" + port;
+    }
+
+    private static class Pool {
+        private HttpClient client;
+        private AtomicInteger connections = new AtomicInteger();
+        private AtomicLong requests = new AtomicLong();
+
+        private Pool(HttpClient client) {
+            this.client = client;
+            client.connectionHandler(connection -> {
+                connections.incrementAndGet();
+                connection.closeHandler(closed -> connections.decrementAndGet());
+            });
+        }
+    }
+}
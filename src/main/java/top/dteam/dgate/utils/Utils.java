@@ -5,6 +5,7 @@ import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.file.FileSystemException;
 import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
@@ -17,15 +18,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class Utils {
 
@@ -47,6 +58,113 @@ public class Utils {
         response.putHeader("content-type", "application/json; charset=utf-8").end(jsonObject.toString());
     }
 
+    /**
+     * Tags successful GET and HEAD responses with an ETag computed from the encoded body,
+     * and answers them with 304 when the client already has this very payload.
+     */
+    public static void fireJsonResponse(HttpServerRequest request, HttpServerResponse response, int statusCode
+            , Map<String, Object> payload) {
+        if (statusCode != 200 || !isSafe(request)) {
+            fireJsonResponse(response, statusCode, payload);
+            return;
+        }
+
+        Buffer body = new JsonObject(payload).toBuffer();
+        String etag = etag(body.getBytes());
+        response.putHeader(HttpHeaders.ETAG, etag);
+        if (isNotModified(request, etag, null)) {
+            response.setStatusCode(304).end();
+        } else {
+            response.setStatusCode(statusCode)
+                    .putHeader("content-type", "application/json; charset=utf-8").end(body);
+        }
+    }
+
+    public static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(body);
+            return '"' + new BigInteger(1, digest).toString(16) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // see: https://tools.ietf.org/html/rfc7232#section-2.1, for a body sent gzipped to some clients
+    // and as it is to others, the validator vouches for the content but not for the bytes
+    public static String weakEtag(String etag) {
+        return etag == null || etag.startsWith("W/") ? etag : "W/" + etag;
+    }
+
+    // see: https://tools.ietf.org/html/rfc7232#section-6, If-None-Match takes precedence
+    public static boolean isNotModified(HttpServerRequest request, String etag, String lastModified) {
+        if (!isSafe(request)) {
+            return false;
+        }
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return etag != null && Arrays.stream(ifNoneMatch.split(",")).map(String::trim)
+                    .anyMatch(tag -> tag.equals("*") || opaqueTag(tag).equals(opaqueTag(etag)));
+        }
+
+        String ifModifiedSince = request.getHeader(HttpHeaders.IF_MODIFIED_SINCE);
+        if (ifModifiedSince != null && lastModified != null) {
+            try {
+                return !ZonedDateTime.parse(lastModified, DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .isAfter(ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME));
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isSafe(HttpServerRequest request) {
+        return request.method() == HttpMethod.GET || request.method() == HttpMethod.HEAD;
+    }
+
+    // weak comparison, W/"x" matches "x"
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    public static byte[] gzip(byte[] body, int level) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static byte[] gunzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length * 4);
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = gzip.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static boolean acceptsGzip(HttpServerRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && Arrays.stream(acceptEncoding.split(","))
+                .map(coding -> coding.trim().toLowerCase())
+                .anyMatch(coding -> coding.equals("gzip")
+                        || coding.startsWith("gzip;") && !coding.matches("gzip;\\s*q=0(\\.0*)?"));
+    }
+
     public static JWTAuth createAuthProvider(Vertx vertx) {
         return JWTAuth.create(vertx, new JWTAuthOptions(jwtOptions()));
     }
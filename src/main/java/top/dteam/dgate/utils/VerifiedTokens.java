@@ -0,0 +1,83 @@
+package top.dteam.dgate.utils;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.jwt.JWT;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Payloads of the tokens whose signature was verified already, so that a token resent on every request
+ * is decoded and verified about once per lifetime instead. An entry lives until the token's exp, tokens
+ * without exp are never kept. The least recently used ones are dropped beyond capacity.
+ *
+ * Like the router it belongs to, an instance is confined to the event loop of its verticle.
+ */
+public class VerifiedTokens {
+
+    private JWT jwt;
+    private Map<String, JsonObject> payloads;
+
+    public VerifiedTokens(JWT jwt, int capacity) {
+        this.jwt = jwt;
+        this.payloads = new LruMap(capacity);
+    }
+
+    /**
+     * Same as {@link JWT#decode(String)}: the signature is verified but exp is not checked, an expired
+     * token is decoded again each time. The returned payload is a copy the caller may change.
+     */
+    public JsonObject decode(String token) {
+        JsonObject payload = verified(token);
+        if (payload == null) {
+            payload = jwt.decode(token);
+            put(token, payload);
+        }
+
+        return payload.copy();
+    }
+
+    /**
+     * The payload of a token verified before and not expired yet, or null. It must not be changed.
+     */
+    public JsonObject verified(String token) {
+        JsonObject payload = payloads.get(token);
+        if (payload != null && isExpired(payload)) {
+            payloads.remove(token);
+            return null;
+        }
+
+        return payload;
+    }
+
+    public void put(String token, JsonObject payload) {
+        if (payload.getValue("exp") instanceof Number && !isExpired(payload)) {
+            payloads.put(token, payload.copy());
+        }
+    }
+
+    public int size() {
+        return payloads.size();
+    }
+
+    private boolean isExpired(JsonObject payload) {
+        return System.currentTimeMillis() / 1000 >= payload.getLong("exp");
+    }
+
+    private static class LruMap extends LinkedHashMap<String, JsonObject> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private LruMap(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JsonObject> eldest) {
+            return size() > capacity;
+        }
+    }
+
+}
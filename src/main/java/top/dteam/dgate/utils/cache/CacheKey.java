@@ -0,0 +1,104 @@
+package top.dteam.dgate.utils.cache;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import top.dteam.dgate.config.CacheKeyConfig;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Key of a cached response: the request URI plus a 128-bit digest of the JWT token,
+ * instead of the whole token JSON concatenated to the URI.
+ * <p>
+ * Routes declaring a {@code cacheKey} vary by the request path plus a digest of the selected
+ * params, headers and JWT claims only, so that data shared by many users is cached once.
+ */
+public final class CacheKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final String uri;
+    private final long tokenHigh;
+    private final long tokenLow;
+
+    private CacheKey(String uri, long tokenHigh, long tokenLow) {
+        this.uri = uri;
+        this.tokenHigh = tokenHigh;
+        this.tokenLow = tokenLow;
+    }
+
+    public static CacheKey of(String uri, JsonObject token) {
+        if (token == null) {
+            return new CacheKey(uri, 0, 0);
+        }
+
+        return digested(uri, token.encode());
+    }
+
+    public static CacheKey of(String path, CacheKeyConfig config, Function<String, Object> params
+            , MultiMap headers, JsonObject token) {
+        // [kind, name, value] triples in the sorted order of the config, absent values left out
+        JsonArray vary = new JsonArray();
+        config.getParams().forEach(name -> addVary(vary, "p", name, params.apply(name)));
+        config.getHeaders().forEach(name -> {
+            List<String> values = headers.getAll(name);
+            addVary(vary, "h", name, values.isEmpty() ? null : String.join(",", values));
+        });
+        config.getClaims().forEach(name -> addVary(vary, "c", name, token != null ? token.getValue(name) : null));
+
+        return vary.isEmpty() ? new CacheKey(path, 0, 0) : digested(path, vary.encode());
+    }
+
+    private static void addVary(JsonArray vary, String kind, String name, Object value) {
+        if (value != null) {
+            vary.add(new JsonArray().add(kind).add(name).add(String.valueOf(value)));
+        }
+    }
+
+    private static CacheKey digested(String uri, String varying) {
+        ByteBuffer digest = ByteBuffer.wrap(MD5.get().digest(varying.getBytes(StandardCharsets.UTF_8)));
+        return new CacheKey(uri, digest.getLong(), digest.getLong());
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+        CacheKey cacheKey = (CacheKey) o;
+        return tokenHigh == cacheKey.tokenHigh && tokenLow == cacheKey.tokenLow && uri.equals(cacheKey.uri);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(uri, tokenHigh, tokenLow);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s-%016x%016x", uri, tokenHigh, tokenLow);
+    }
+}
@@ -2,16 +2,34 @@ package top.dteam.dgate.utils.cache;
 
 import io.vertx.core.Vertx;
 import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonObject;
 import io.vertx.core.spi.cluster.ClusterManager;
+import org.apache.ignite.DataRegionMetrics;
 import org.apache.ignite.Ignite;
 import org.apache.ignite.IgniteCache;
 import org.apache.ignite.Ignition;
+import org.apache.ignite.cache.CacheMetrics;
 import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.configuration.DataPageEvictionMode;
+import org.apache.ignite.configuration.DataRegionConfiguration;
+import org.apache.ignite.configuration.DataStorageConfiguration;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.UUID;
 
 public class CacheLocator {
+    public static final String DATA_REGION = "dgate-responses";
+    public static final long DEFAULT_DATA_REGION_SIZE = 256L * 1024 * 1024;
+    private static final double EVICTION_THRESHOLD = 0.9;
+    private static final long EVICTION_CHECK_INTERVAL = 1000;
+
     private static Ignite ignite;
+    private static Vertx timerVertx;
+    private static long evictionTimer;
+    // read by every put, so worked out by a timer rather than from the metrics each time
+    private static volatile boolean evicting;
 
     public static void init(Vertx vertx) {
         // Get ignite instance from vertx instance
@@ -19,22 +37,115 @@ public class CacheLocator {
             ClusterManager clusterManager = ((VertxInternal) vertx).getClusterManager();
             String uuid = clusterManager.getNodeID();
             ignite = Ignition.ignite(UUID.fromString(uuid));
+            timerVertx = vertx;
+            evictionTimer = vertx.setPeriodic(EVICTION_CHECK_INTERVAL, tid -> checkEviction());
         }
     }
 
+    static void init(Ignite instance) {
+        ignite = instance;
+        checkEviction();
+    }
+
     public static void close() {
+        if (timerVertx != null) {
+            timerVertx.cancelTimer(evictionTimer);
+            timerVertx = null;
+        }
+        evicting = false;
         if (ignite != null) {
             ignite.close();
             ignite = null;
         }
     }
 
-    static <K, V> IgniteCache<K, V> getCacheByName(String cacheName) {
-        return ignite.cache(cacheName);
+    // The off-heap budget shared by the response caches of all the routes, pages of the
+    // least recently used entries are evicted once it is 90% full.
+    public static DataRegionConfiguration dataRegion(long maxSize) {
+        return new DataRegionConfiguration()
+                .setName(DATA_REGION)
+                .setInitialSize(Math.min(maxSize, DataStorageConfiguration.DFLT_DATA_REGION_INITIAL_SIZE))
+                .setMaxSize(maxSize)
+                .setPageEvictionMode(DataPageEvictionMode.RANDOM_2_LRU)
+                .setEvictionThreshold(EVICTION_THRESHOLD)
+                .setMetricsEnabled(true);
+    }
+
+    public static JsonObject stats(String apiGatewayName) {
+        JsonObject stats = new JsonObject();
+        if (ignite == null) {
+            return stats;
+        }
+
+        if (hasDataRegion()) {
+            DataRegionMetrics region = ignite.dataRegionMetrics(DATA_REGION);
+            stats.put("region", new JsonObject()
+                    .put("allocatedPages", region.getTotalAllocatedPages())
+                    .put("evictionRate", region.getEvictionRate())
+                    .put("fillFactor", region.getPagesFillFactor()));
+        }
+
+        JsonObject caches = new JsonObject();
+        ignite.cacheNames().stream()
+                .filter(name -> name.startsWith(apiGatewayName + "/"))
+                .forEach(name -> {
+                    CacheMetrics metrics = ignite.cache(name).localMetrics();
+                    caches.put(name.substring(apiGatewayName.length()), new JsonObject()
+                            .put("heapEntries", metrics.getHeapEntriesCount())
+                            .put("offHeapEntries", metrics.getOffHeapEntriesCount())
+                            .put("evictions", metrics.getCacheEvictions())
+                            .put("hits", metrics.getCacheHits())
+                            .put("misses", metrics.getCacheMisses())
+                            .put("hitRatio", metrics.getCacheHitPercentage() / 100)
+                            .put("refused", ResponseHolder.refused(name)));
+                });
+        return stats.put("caches", caches);
+    }
+
+    // the off-heap budget of the response caches, as configured at startup
+    static long regionSize() {
+        DataRegionConfiguration region = ignite != null ? dataRegion(ignite) : null;
+        return region != null ? region.getMaxSize() : DEFAULT_DATA_REGION_SIZE;
     }
 
-    static boolean containsCache(String cacheName) {
-        return ignite.cacheNames().contains(cacheName);
+    static boolean hasDataRegion() {
+        return dataRegion(ignite) != null;
+    }
+
+    static boolean isEvicting() {
+        return evicting;
+    }
+
+    // the region evicts pages of any route, whatever their entries are worth, once its allocated pages
+    // pass the threshold, and from then on reuses them rather than allocating more
+    static void checkEviction() {
+        // read once, close() may clear it meanwhile
+        Ignite instance = ignite;
+        DataRegionConfiguration region = instance != null ? dataRegion(instance) : null;
+        if (region == null) {
+            evicting = false;
+            return;
+        }
+
+        int pageSize = instance.configuration().getDataStorageConfiguration().getPageSize();
+        long maxPages = region.getMaxSize() / (pageSize > 0 ? pageSize : DataStorageConfiguration.DFLT_PAGE_SIZE);
+        long allocatedPages = instance.dataRegionMetrics(DATA_REGION).getTotalAllocatedPages();
+        evicting = allocatedPages + region.getEmptyPagesPoolSize() >= maxPages * region.getEvictionThreshold();
+    }
+
+    private static DataRegionConfiguration dataRegion(Ignite ignite) {
+        DataStorageConfiguration storage = ignite.configuration().getDataStorageConfiguration();
+        DataRegionConfiguration[] regions = storage == null ? null : storage.getDataRegionConfigurations();
+        return regions == null ? null :
+                Arrays.stream(regions).filter(region -> DATA_REGION.equals(region.getName())).findFirst().orElse(null);
+    }
+
+    static Collection<String> cacheNames() {
+        return ignite != null ? ignite.cacheNames() : Collections.emptyList();
+    }
+
+    static <K, V> IgniteCache<K, V> getCacheByName(String cacheName) {
+        return ignite.cache(cacheName);
     }
 
     static <K, V> IgniteCache<K, V> getOrCreateCache(CacheConfiguration<K, V> cacheCfg) {
@@ -0,0 +1,113 @@
+package top.dteam.dgate.utils.cache;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonObject;
+import org.apache.ignite.IgniteCache;
+import org.apache.ignite.cache.query.QueryCursor;
+import org.apache.ignite.cache.query.ScanQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.cache.Cache;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Purges cached responses before they expire. Purge requests are published to {@link #ADDRESS},
+ * so every node of the cluster purges its own caches; shared caches are simply purged once per node.
+ * <p>
+ * A request selects caches by {@code gateway}, {@code route} and {@code upstream} (host:port/url),
+ * then entries by request uri {@code prefix} and cache {@code tag}. Selected caches are cleared
+ * when neither prefix nor tag is given.
+ */
+public class CachePurger extends AbstractVerticle {
+
+    public static final String ADDRESS = "dgate.cache.purge";
+    public static final List<String> CRITERIA = Arrays.asList("gateway", "route", "upstream", "prefix", "tag");
+
+    private static final Logger logger = LoggerFactory.getLogger(CachePurger.class);
+
+    private MessageConsumer<JsonObject> consumer;
+
+    @Override
+    public void start() {
+        consumer = vertx.eventBus().consumer(ADDRESS, message -> {
+            JsonObject criteria = message.body();
+            if (!isValid(criteria)) {
+                logger.warn("Ignored cache purge without criteria: {}", criteria);
+                return;
+            }
+
+            vertx.<Integer>executeBlocking(future -> future.complete(purge(criteria)), false, result -> {
+                if (result.succeeded()) {
+                    logger.info("Purged {} cached responses by {}", result.result(), criteria.encode());
+                } else {
+                    logger.error("Purging cached responses by {} failed: ", criteria.encode(), result.cause());
+                }
+            });
+        });
+    }
+
+    @Override
+    public void stop() {
+        consumer.unregister();
+    }
+
+    public static boolean isValid(JsonObject criteria) {
+        return criteria != null && CRITERIA.stream().anyMatch(name -> criteria.getValue(name) instanceof String);
+    }
+
+    /**
+     * Blocking, returns the number of entries purged, or of entries held locally by cleared caches.
+     */
+    public static int purge(JsonObject criteria) {
+        String prefix = criteria.getString("prefix");
+        String tag = criteria.getString("tag");
+
+        int purged = 0;
+        for (String cacheName : CacheLocator.cacheNames()) {
+            if (!matches(cacheName, criteria)) {
+                continue;
+            }
+
+            IgniteCache<CacheKey, CachedResponse> cache = CacheLocator.getCacheByName(cacheName);
+            if (prefix == null && tag == null) {
+                purged += cache.localSize();
+                cache.clear();
+            } else {
+                Set<CacheKey> keys = new HashSet<>();
+                try (QueryCursor<Cache.Entry<CacheKey, CachedResponse>> cursor = cache.query(
+                        new ScanQuery<CacheKey, CachedResponse>((key, response) ->
+                                (prefix == null || key.getUri().startsWith(prefix))
+                                        && (tag == null || response.getTags().contains(tag))))) {
+                    cursor.forEach(entry -> keys.add(entry.getKey()));
+                }
+                cache.removeAll(keys);
+                purged += keys.size();
+            }
+        }
+
+        return purged;
+    }
+
+    // Response caches are named gateway + route [+ "-" + host:port/url], gateway names have no '/'
+    // while routes start with one. Other caches, like those of the cluster manager, are left alone.
+    private static boolean matches(String cacheName, JsonObject criteria) {
+        int routeStart = cacheName.indexOf('/');
+        if (routeStart <= 0 || cacheName.startsWith("__")) {
+            return false;
+        }
+
+        String gateway = criteria.getString("gateway");
+        String route = criteria.getString("route");
+        String upstream = criteria.getString("upstream");
+        String rest = cacheName.substring(routeStart);
+
+        return (gateway == null || gateway.equals(cacheName.substring(0, routeStart)))
+                && (route == null || rest.equals(route) || rest.startsWith(route + "-"))
+                && (upstream == null || rest.endsWith("-" + upstream));
+    }
+}
@@ -0,0 +1,224 @@
+package top.dteam.dgate.utils.cache;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import top.dteam.dgate.config.CompressionConfig;
+import top.dteam.dgate.gateway.SimpleResponse;
+import top.dteam.dgate.utils.RequestUtils;
+import top.dteam.dgate.utils.Utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response as it is written to the client: status, the headers worth keeping and the encoded
+ * body, so that a hit is written out without encoding anything. It also records when it was
+ * stored, so that it can still be served as stale data after it expires, and the tags the
+ * upstream attached to it, so that it can be purged by tag.
+ * <p>
+ * A response gets an ETag computed from its body when the upstream sent none, so that clients
+ * can revalidate against the gateway, while the validators of the upstream itself are kept apart
+ * to revalidate the entry against the upstream once it expires.
+ * <p>
+ * Compressible bodies are stored gzipped, as the upstream sent them or compressed once when they
+ * are stored, so that hits cost no CPU for the clients accepting gzip, i.e. nearly all of them.
+ * Their ETag is weak, since the same entry is written gzipped or decompressed.
+ */
+public class CachedResponse {
+
+    private static final String VARY = "Vary";
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    // per client headers such as Set-Cookie must never be shared through the cache
+    private static final List<CharSequence> CACHED_HEADERS = Arrays.asList(
+            HttpHeaders.CONTENT_TYPE, HttpHeaders.CONTENT_ENCODING, HttpHeaders.CONTENT_LANGUAGE,
+            HttpHeaders.CONTENT_DISPOSITION, HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED,
+            HttpHeaders.CACHE_CONTROL, HttpHeaders.createOptimized(VARY));
+
+    // see: https://tools.ietf.org/html/rfc7232#section-4.1
+    private static final List<CharSequence> NOT_MODIFIED_HEADERS = Arrays.asList(
+            HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED, HttpHeaders.CACHE_CONTROL, HttpHeaders.createOptimized(VARY));
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private int statusCode;
+    private Map<String, String> headers;
+    private byte[] body;
+    private long createdAt;
+    private List<String> tags;
+    private String upstreamEtag;
+    private String upstreamLastModified;
+
+    private CachedResponse(int statusCode, Map<String, String> headers, byte[] body, List<String> tags) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = body;
+        this.tags = tags;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public static CachedResponse of(JsonObject payload) {
+        return of(payload, Collections.emptyList());
+    }
+
+    public static CachedResponse of(JsonObject payload, List<String> tags) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put(HttpHeaders.CONTENT_TYPE.toString(), JSON_CONTENT_TYPE);
+        CachedResponse cachedResponse = new CachedResponse(200, headers,
+                payload != null ? payload.toBuffer().getBytes() : new byte[0], tags);
+        cachedResponse.headers.put(HttpHeaders.ETAG.toString(), Utils.etag(cachedResponse.body));
+        return cachedResponse;
+    }
+
+    public static CachedResponse of(SimpleResponse response) {
+        CachedResponse cachedResponse = of(response.getPayload(), response.getCacheTags());
+        cachedResponse.upstreamEtag = response.getEtag();
+        cachedResponse.upstreamLastModified = response.getLastModified();
+        return cachedResponse;
+    }
+
+    public static CachedResponse of(HttpClientResponse response, Buffer body) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        CACHED_HEADERS.forEach(name -> {
+            List<String> values = response.headers().getAll(name);
+            if (!values.isEmpty()) {
+                headers.put(name.toString(), String.join(", ", values));
+            }
+        });
+        CachedResponse cachedResponse = new CachedResponse(response.statusCode(), headers, body.getBytes(),
+                RequestUtils.cacheTags(response.headers()));
+        cachedResponse.upstreamEtag = headers.get(HttpHeaders.ETAG.toString());
+        cachedResponse.upstreamLastModified = headers.get(HttpHeaders.LAST_MODIFIED.toString());
+        headers.computeIfAbsent(HttpHeaders.ETAG.toString(), name -> Utils.etag(cachedResponse.body));
+        if (cachedResponse.isGzipped()) {
+            headers.put(HttpHeaders.ETAG.toString(), Utils.weakEtag(headers.get(HttpHeaders.ETAG.toString())));
+        }
+        return cachedResponse;
+    }
+
+    // the upstream answered 304 to the conditional request, the entry is as good as new again
+    public CachedResponse revalidated() {
+        CachedResponse cachedResponse = new CachedResponse(statusCode, headers, body, tags);
+        cachedResponse.upstreamEtag = upstreamEtag;
+        cachedResponse.upstreamLastModified = upstreamLastModified;
+        return cachedResponse;
+    }
+
+    public CachedResponse compressed(CompressionConfig compression) {
+        if (compression == null || statusCode != 200 || headers.containsKey(HttpHeaders.CONTENT_ENCODING.toString())
+                || body.length < compression.getMinSize()
+                || !CompressionConfig.isCompressible(headers.get(HttpHeaders.CONTENT_TYPE.toString()))) {
+            return this;
+        }
+
+        Map<String, String> compressedHeaders = new LinkedHashMap<>(headers);
+        compressedHeaders.put(HttpHeaders.CONTENT_ENCODING.toString(), RequestUtils.GZIP);
+        compressedHeaders.computeIfPresent(HttpHeaders.ETAG.toString(), (name, etag) -> Utils.weakEtag(etag));
+        CachedResponse cachedResponse = new CachedResponse(statusCode, compressedHeaders
+                , Utils.gzip(body, compression.getLevel()), tags);
+        cachedResponse.upstreamEtag = upstreamEtag;
+        cachedResponse.upstreamLastModified = upstreamLastModified;
+        cachedResponse.createdAt = createdAt;
+        return cachedResponse;
+    }
+
+    public boolean isGzipped() {
+        return RequestUtils.GZIP.equalsIgnoreCase(headers.get(HttpHeaders.CONTENT_ENCODING.toString()));
+    }
+
+    public Map<String, String> conditionalHeaders() {
+        Map<String, String> conditionalHeaders = new LinkedHashMap<>();
+        if (upstreamEtag != null) {
+            conditionalHeaders.put(HttpHeaders.IF_NONE_MATCH.toString(), upstreamEtag);
+        }
+        if (upstreamLastModified != null) {
+            conditionalHeaders.put(HttpHeaders.IF_MODIFIED_SINCE.toString(), upstreamLastModified);
+        }
+        return conditionalHeaders;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    // decoded on every call, cached responses are not copied on read and event loops share them
+    public JsonObject getPayload() {
+        return body.length > 0 ? Buffer.buffer(isGzipped() ? Utils.gunzip(body) : body).toJsonObject() : null;
+    }
+
+    public long age() {
+        return System.currentTimeMillis() - createdAt;
+    }
+
+    public String getUpstreamEtag() {
+        return upstreamEtag;
+    }
+
+    public String getUpstreamLastModified() {
+        return upstreamLastModified;
+    }
+
+    public void writeTo(HttpServerRequest request, HttpServerResponse response) {
+        if (statusCode == 200 && Utils.isNotModified(request, headers.get(HttpHeaders.ETAG.toString())
+                , headers.get(HttpHeaders.LAST_MODIFIED.toString()))) {
+            response.setStatusCode(304);
+            NOT_MODIFIED_HEADERS.forEach(name -> {
+                String value = headers.get(name.toString());
+                if (value != null) {
+                    response.putHeader(name, value);
+                }
+            });
+            response.end();
+        } else if (isGzipped()) {
+            writeGzipped(request, response);
+        } else {
+            writeTo(response);
+        }
+    }
+
+    public void writeTo(HttpServerResponse response) {
+        response.setStatusCode(statusCode);
+        headers.forEach(response::putHeader);
+        response.end(Buffer.buffer(body));
+    }
+
+    // the rare client not accepting gzip gets the body decompressed
+    private void writeGzipped(HttpServerRequest request, HttpServerResponse response) {
+        response.setStatusCode(statusCode);
+        headers.forEach(response::putHeader);
+        String vary = headers.get(VARY);
+        if (vary == null || !vary.toLowerCase().contains(HttpHeaders.ACCEPT_ENCODING.toString())) {
+            response.putHeader(VARY, vary == null ? ACCEPT_ENCODING : vary + ", " + ACCEPT_ENCODING);
+        }
+
+        if (Utils.acceptsGzip(request)) {
+            response.end(Buffer.buffer(body));
+        } else {
+            response.headers().remove(HttpHeaders.CONTENT_ENCODING);
+            response.end(Buffer.buffer(Utils.gunzip(body)));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package top.dteam.dgate.utils.cache;
+
+import java.io.Serializable;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often a key was accessed recently.
+ * Each long holds 16 counters, every key is counted in 4 of them picked by different hashes.
+ * Counters are halved once {@code 10 * width} accesses have been recorded, so past popularity
+ * fades away.
+ * <p>
+ * Not thread safe, callers synchronize or keep it to one thread.
+ */
+class FrequencySketch implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = {0x97cb3127, 0xc4ceb9fe, 0x2f0b1a3d, 0x9e3779b9};
+    private static final int MAX_FREQUENCY = 15;
+    private static final int BYTES_PER_COUNTER = 1024;
+    private static final int MAX_CAPACITY = 1 << 20;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(int capacity) {
+        table = new long[Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1];
+        sampleSize = 10 * table.length;
+    }
+
+    // sized for the entries of about 1KB a cache of memorySize bytes may hold
+    static FrequencySketch forMemorySize(long memorySize) {
+        return new FrequencySketch((int) Math.min(MAX_CAPACITY, Math.max(16, memorySize / BYTES_PER_COUNTER)));
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, counter(hash, i));
+        }
+        return frequency;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            if (counter(hash, i) < MAX_FREQUENCY) {
+                table[indexOf(hash, i)] += 1L << offsetOf(hash, i);
+                added = true;
+            }
+        }
+
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private int counter(int hash, int i) {
+        return (int) ((table[indexOf(hash, i)] >>> offsetOf(hash, i)) & 0xfL);
+    }
+
+    private int indexOf(int hash, int i) {
+        int h = hash * SEEDS[i];
+        return (h ^ (h >>> 16)) & (table.length - 1);
+    }
+
+    private static int offsetOf(int hash, int i) {
+        return (((hash >>> (i << 3)) & 3) << 2 | i) << 2;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size /= 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
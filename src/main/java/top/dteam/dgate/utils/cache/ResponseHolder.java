@@ -1,105 +1,223 @@
 package top.dteam.dgate.utils.cache;
 
-import io.vertx.core.json.JsonObject;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
 import org.apache.ignite.IgniteCache;
 import org.apache.ignite.cache.CacheMode;
 import org.apache.ignite.cache.eviction.lru.LruEvictionPolicy;
 import org.apache.ignite.configuration.CacheConfiguration;
+import org.apache.ignite.configuration.NearCacheConfiguration;
+import org.apache.ignite.lang.IgniteFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import top.dteam.dgate.config.CacheConfig;
 
 import javax.cache.expiry.Duration;
 import javax.cache.expiry.ModifiedExpiryPolicy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Handle of the response cache of one route (or one upstream of a route), created once
+ * when the handler is built. The underlying Ignite cache is resolved lazily, since Ignite
+ * may not be up yet when the routes are built, and is memoized once it exists.
+ * <p>
+ * Entries are fresh for {@code expires} ms, and are kept longer when the route allows them to be
+ * served stale: while being revalidated ({@code staleWhileRevalidate}) or when the upstream
+ * fails ({@code staleIfError}).
+ * <p>
+ * Responses live off-heap in the data region shared by all the routes, which evicts pages once
+ * its byte budget is reached. From then on a response is only written when its key has been looked
+ * up before, so one-off requests don't make the region evict the hot entries of any route. The
+ * lookups are counted by each instance of the gateway on its own, for its share of the region. Each
+ * route keeps its hot entries on heap as well, bounded by bytes in proportion to its
+ * {@code cacheWeight} rather than by entry count, admitted there by their recent access frequency.
+ * <p>
+ * Partitioned and replicated caches are shared by all the nodes of the cluster, removals included,
+ * with a near cache on each node for the hot entries.
+ * <p>
+ * A miss of the near cache or a put with backups is a round trip to other nodes, so lookups and
+ * puts never wait for Ignite: their results are handed back on the Vert.x context of the caller.
+ * Resolving or creating the cache may wait for the cluster as well, and is done on a worker.
+ * <p>
+ * A holder belongs to the handler of one verticle instance, and is only used on its event loop.
+ */
 public class ResponseHolder {
-    private static final int MAX_ENTRY_PER_CACHE = 1000;
+    private static final Logger logger = LoggerFactory.getLogger(ResponseHolder.class);
+    private static final int ADMISSION_FREQUENCY = 2;
+    private static final Map<String, LongAdder> refusals = new ConcurrentHashMap<>();
+
+    private final String cacheName;
+    private final int expires;
+    private final int staleWhileRevalidate;
+    private final int staleIfError;
+    private final int weight;
+    private final CacheConfig config;
+    private final FrequencySketch sketch;
+    private volatile IgniteCache<CacheKey, CachedResponse> cache;
+
+    private ResponseHolder(String cacheName, int expires, int staleWhileRevalidate, int staleIfError
+            , int weight, CacheConfig config) {
+        this.cacheName = cacheName;
+        this.expires = expires;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        this.staleIfError = staleIfError;
+        this.weight = weight;
+        this.config = config;
+        this.sketch = FrequencySketch.forMemorySize(
+                CacheLocator.regionSize() * weight / Math.max(1, config.getTotalWeight()));
+    }
 
-    private static IgniteCache<String, JsonObject> getOrCreate(
-            String apiGatewayName, String route, int expires) {
-        String cacheName = cacheName(apiGatewayName, route);
-        CacheConfiguration<String, JsonObject> cacheCfg =
-                new CacheConfiguration<>(cacheName);
-        cacheCfg.setCacheMode(CacheMode.LOCAL);
-        cacheCfg.setExpiryPolicyFactory(ModifiedExpiryPolicy.factoryOf(
-                new Duration(TimeUnit.MILLISECONDS, expires)));
-        cacheCfg.setEagerTtl(false);
-        cacheCfg.setEvictionPolicy(new LruEvictionPolicy(MAX_ENTRY_PER_CACHE));
-        cacheCfg.setOnheapCacheEnabled(true);
+    public static ResponseHolder of(String apiGatewayName, String route
+            , int expires, int staleWhileRevalidate, int staleIfError, int weight, CacheConfig config) {
+        return new ResponseHolder(apiGatewayName + route, expires, staleWhileRevalidate, staleIfError
+                , weight, config);
+    }
 
-        return CacheLocator.getOrCreateCache(cacheCfg);
+    public static ResponseHolder of(String apiGatewayName, String route
+            , String upstreamHost, int upstreamPort, String upstreamURL
+            , int expires, int staleWhileRevalidate, int staleIfError, int weight, CacheConfig config) {
+        return of(apiGatewayName, upstreamRoute(route, upstreamHost, upstreamPort, upstreamURL)
+                , expires, staleWhileRevalidate, staleIfError, weight, config);
     }
 
-    public static void put(String apiGatewayName, String route
-            , String URL, JsonObject token, JsonObject content, int expires) {
-        IgniteCache<String, JsonObject> cache =
-                getOrCreate(apiGatewayName, route, expires);
-        String tokenString = token != null ? token.toString() : null;
-        String cacheKey = cacheKey(URL, tokenString);
+    public void get(CacheKey key, Handler<AsyncResult<CachedResponse>> handler) {
+        sketch.increment(key);
+
+        Context context = Vertx.currentContext();
+        withCache(context, () -> CacheLocator.getCacheByName(cacheName), cache -> {
+            if (cache.failed() || cache.result() == null) {
+                handler.handle(cache.failed() ? Future.failedFuture(cache.cause()) : Future.succeededFuture());
+                return;
+            }
 
-        cache.put(cacheKey, content);
+            cache.result().getAsync(key).listen(result -> completeOn(context, result, handler));
+        });
     }
 
-    public static void put(String apiGatewayName, String route
-            , String upstreamHost, int upstreamPort, String upstreamURL
-            , String URL, JsonObject token, JsonObject content, int expires) {
-        String upstreamRoute = upstreamRoute(route, upstreamHost, upstreamPort, upstreamURL);
+    public void put(CacheKey key, CachedResponse response) {
+        put(key, response, result -> {
+            if (result.failed()) {
+                logger.warn("Putting response cache into {} failed: {}", cacheName, result.cause().getMessage());
+            }
+        });
+    }
+
+    public void put(CacheKey key, CachedResponse response, Handler<AsyncResult<Void>> handler) {
+        if (!isAdmitted(key)) {
+            logger.debug("Refused response cache of {} into {}, it has been looked up once", key, cacheName);
+            refusals.computeIfAbsent(cacheName, name -> new LongAdder()).increment();
+            handler.handle(Future.succeededFuture());
+            return;
+        }
 
-        put(apiGatewayName, upstreamRoute, URL, token, content, expires);
+        Context context = Vertx.currentContext();
+        withCache(context, () -> CacheLocator.getOrCreateCache(cacheConfiguration()), cache -> {
+            if (cache.failed()) {
+                handler.handle(Future.failedFuture(cache.cause()));
+                return;
+            }
+
+            cache.result().putAsync(key, response).listen(result -> completeOn(context, result, handler));
+        });
     }
 
-    public static JsonObject get(String apiGatewayName, String route
-            , String URL, JsonObject token) {
-        String cacheName = cacheName(apiGatewayName, route);
-        if (CacheLocator.containsCache(cacheName)) {
-            IgniteCache<String, JsonObject> cache =
-                    CacheLocator.getCacheByName(cacheName);
-            String tokenString = token != null ? token.toString() : null;
+    static long refused(String cacheName) {
+        LongAdder refused = refusals.get(cacheName);
+        return refused != null ? refused.sum() : 0;
+    }
 
-            return cache.get(cacheKey(URL, tokenString));
-        } else {
-            return null;
+    private boolean isAdmitted(CacheKey key) {
+        if (!CacheLocator.isEvicting()) {
+            return true;
         }
-    }
 
-    public static JsonObject get(String apiGatewayName, String route
-            , String upstreamHost, int upstreamPort, String upstreamURL
-            , String URL, JsonObject token) {
-        String upstreamRoute = upstreamRoute(route, upstreamHost, upstreamPort, upstreamURL);
+        return sketch.frequency(key) >= ADMISSION_FREQUENCY;
+    }
 
-        return get(apiGatewayName, upstreamRoute, URL, token);
+    public boolean isFresh(CachedResponse response) {
+        return response.age() < expires;
     }
 
-    public static boolean containsCacheName(String apiGatewayName, String route) {
-        return CacheLocator.containsCache(cacheName(apiGatewayName, route));
+    public boolean isRevalidatable(CachedResponse response) {
+        return response.age() < expires + staleWhileRevalidate;
     }
 
-    public static boolean containsCacheEntry(String apiGatewayName, String route
-            , String URL, JsonObject token) {
-        if (containsCacheName(apiGatewayName, route)) {
-            IgniteCache<String, JsonObject> cache =
-                    CacheLocator.getCacheByName(cacheName(apiGatewayName, route));
-            String tokenString = token != null ? token.toString() : null;
-            String cacheKey = cacheKey(URL, tokenString);
+    public boolean isUsableOnError(CachedResponse response) {
+        return response.age() < expires + staleIfError;
+    }
 
-            return (cache.containsKey(cacheKey) && cache.get(cacheKey) != null);
+    // callers off Vert.x, such as tools and tests, may wait for the cache themselves
+    private void withCache(Context context, Supplier<IgniteCache<CacheKey, CachedResponse>> resolver
+            , Handler<AsyncResult<IgniteCache<CacheKey, CachedResponse>>> handler) {
+        IgniteCache<CacheKey, CachedResponse> cache = this.cache;
+        if (cache != null) {
+            handler.handle(Future.succeededFuture(cache));
+        } else if (context == null) {
+            try {
+                handler.handle(Future.succeededFuture(memoize(resolver.get())));
+            } catch (Exception e) {
+                handler.handle(Future.failedFuture(e));
+            }
         } else {
-            return false;
+            context.<IgniteCache<CacheKey, CachedResponse>>executeBlocking(
+                    promise -> promise.complete(memoize(resolver.get())), false, handler);
         }
     }
 
-    public static boolean containsCacheEntry(String apiGatewayName, String route
-            , String upstreamHost, int upstreamPort, String upstreamURL
-            , String URL, JsonObject token) {
-        String upstreamRoute = upstreamRoute(route, upstreamHost, upstreamPort, upstreamURL);
-
-        return containsCacheEntry(apiGatewayName, upstreamRoute, URL, token);
+    private IgniteCache<CacheKey, CachedResponse> memoize(IgniteCache<CacheKey, CachedResponse> cache) {
+        if (cache != null) {
+            this.cache = cache;
+        }
+        return cache;
     }
 
-    private static String cacheName(String apiGatewayName, String route) {
-        return apiGatewayName + route;
+    private static <T> void completeOn(Context context, IgniteFuture<T> future, Handler<AsyncResult<T>> handler) {
+        AsyncResult<T> result;
+        try {
+            result = Future.succeededFuture(future.get());
+        } catch (Exception e) {
+            result = Future.failedFuture(e);
+        }
+
+        if (context == null) {
+            handler.handle(result);
+        } else {
+            AsyncResult<T> completed = result;
+            context.runOnContext(v -> handler.handle(completed));
+        }
     }
 
-    private static String cacheKey(String requestURI, String token) {
-        return token == null ? requestURI : requestURI + "-" + token;
+    private CacheConfiguration<CacheKey, CachedResponse> cacheConfiguration() {
+        CacheConfiguration<CacheKey, CachedResponse> cacheCfg =
+                new CacheConfiguration<>(cacheName);
+        cacheCfg.setCacheMode(config.getMode());
+        if (config.getMode() != CacheMode.LOCAL) {
+            cacheCfg.setBackups(config.getBackups());
+            if (config.getNearCacheSize() > 0) {
+                cacheCfg.setNearConfiguration(new NearCacheConfiguration<CacheKey, CachedResponse>()
+                        .setNearEvictionPolicy(new LruEvictionPolicy<>(config.getNearCacheSize())));
+            }
+        }
+        cacheCfg.setExpiryPolicyFactory(ModifiedExpiryPolicy.factoryOf(
+                new Duration(TimeUnit.MILLISECONDS, expires + Math.max(staleWhileRevalidate, staleIfError))));
+        cacheCfg.setEagerTtl(false);
+        cacheCfg.setEvictionPolicy(new TinyLfuEvictionPolicy<>(config.getHeapSize() * weight));
+        cacheCfg.setOnheapCacheEnabled(true);
+        if (CacheLocator.hasDataRegion()) {
+            cacheCfg.setDataRegionName(CacheLocator.DATA_REGION);
+        }
+        cacheCfg.setStatisticsEnabled(true);
+        // cached responses are only read, hand out the on-heap instance instead of a copy
+        cacheCfg.setCopyOnRead(false);
+
+        return cacheCfg;
     }
 
     private static String upstreamRoute(String route, String upstreamHost
@@ -0,0 +1,122 @@
+package top.dteam.dgate.utils.cache;
+
+import org.apache.ignite.cache.eviction.EvictableEntry;
+import org.apache.ignite.cache.eviction.EvictionPolicy;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-heap eviction policy bounded by bytes, which only lets a new entry in at the expense of the
+ * least recently used one when the new entry has been accessed more often recently (TinyLFU).
+ * One-off requests, a scan of unique urls for example, are turned away instead of flushing the
+ * hot entries out of the heap. Entries evicted or refused here remain in the off-heap tier, where
+ * {@link ResponseHolder} turns one-off entries away before they are written.
+ */
+public class TinyLfuEvictionPolicy<K, V> implements EvictionPolicy<K, V>, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long maxMemorySize;
+    private final FrequencySketch sketch;
+    // access ordered, the eldest entry is the eviction victim
+    private final Map<Object, Node<K, V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memorySize;
+
+    public TinyLfuEvictionPolicy(long maxMemorySize) {
+        this.maxMemorySize = maxMemorySize;
+        this.sketch = FrequencySketch.forMemorySize(maxMemorySize);
+    }
+
+    @Override
+    public synchronized void onEntryAccessed(boolean rmv, EvictableEntry<K, V> entry) {
+        Object key = entry.getKey();
+        if (rmv) {
+            remove(key);
+            return;
+        }
+
+        if (!entry.isCached()) {
+            return;
+        }
+
+        sketch.increment(key);
+        Node<K, V> node = entries.get(key);
+        if (node == null) {
+            node = new Node<>(entry);
+            entries.put(key, node);
+        } else {
+            memorySize -= node.size;
+            node.entry = entry;
+            node.size = entry.size();
+        }
+        memorySize += node.size;
+
+        admit(key);
+    }
+
+    public synchronized long getCurrentMemorySize() {
+        return memorySize;
+    }
+
+    public synchronized int getCurrentSize() {
+        return entries.size();
+    }
+
+    public long getMaxMemorySize() {
+        return maxMemorySize;
+    }
+
+    private void admit(Object candidate) {
+        int candidateFrequency = sketch.frequency(candidate);
+        // entries failing to be evicted go back to the tail, don't go round forever
+        int attempts = entries.size();
+        while (memorySize > maxMemorySize && attempts-- > 0) {
+            Iterator<Object> eldest = entries.keySet().iterator();
+            Object victim = eldest.next();
+            if (victim.equals(candidate)) {
+                if (!eldest.hasNext()) {
+                    return;
+                }
+                victim = eldest.next();
+            }
+
+            if (candidateFrequency > sketch.frequency(victim)) {
+                evict(victim);
+            } else {
+                evict(candidate);
+                return;
+            }
+        }
+    }
+
+    private void evict(Object key) {
+        Node<K, V> node = remove(key);
+        if (node != null && !node.entry.evict()) {
+            // still in use, keep it and try again on its next access
+            entries.put(key, node);
+            memorySize += node.size;
+        }
+    }
+
+    private Node<K, V> remove(Object key) {
+        Node<K, V> node = entries.remove(key);
+        if (node != null) {
+            memorySize -= node.size;
+        }
+        return node;
+    }
+
+    private static class Node<K, V> implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient EvictableEntry<K, V> entry;
+        private int size;
+
+        private Node(EvictableEntry<K, V> entry) {
+            this.entry = entry;
+            this.size = entry.size();
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package top.dteam.dgate.config
 
 import io.vertx.core.http.HttpMethod
+import io.vertx.core.http.HttpVersion
 import io.vertx.core.json.JsonObject
+import org.apache.ignite.cache.CacheMode
 import spock.lang.Specification
+import spock.lang.Unroll
 import top.dteam.dgate.gateway.SimpleResponse
 
 class ApiGatewayRepositorySpec extends Specification {
@@ -14,6 +17,28 @@ class ApiGatewayRepositorySpec extends Specification {
 
             apiGateway1 {
                 port = 7000
+                instances = 4
+                bodyLimit = 1048576
+                server {
+                    ssl = true
+                    keyStore {
+                        path = 'dgate-server.jks'
+                        password = 'dcloud'
+                    }
+                    initialWindowSize = 1048576
+                    reusePort = true
+                    acceptBacklog = 2048
+                    compression {
+                        level = 4
+                        minSize = 512
+                    }
+                }
+                cache {
+                    mode = 'partitioned'
+                    backups = 1
+                    nearCacheSize = 0
+                    heapSize = 1048576
+                }
                 login = "/login"
                 cors {
                     allowedOriginPattern = "http://127.0.0.1"
@@ -57,11 +82,23 @@ class ApiGatewayRepositorySpec extends Specification {
                         ]
                     }
                     "/composite" {
+                        staleWhileRevalidate = 3000
+                        staleIfError = 60000
+                        cacheWeight = 4
+                        rawBody = true
+                        streaming = true
+                        deadline = 1500
+                        bodyLimit = 4096
+                        cacheKey {
+                            params = ['param2', 'param1']
+                            headers = ['Accept-Language']
+                            claims = ['tenantId']
+                        }
                         required = ['param1', 'param2']
                         methods = [HttpMethod.GET, HttpMethod.POST]
                         upstreamURLs = [
                             [host: 'localhost', port: 8080, url: '/test1'],
-                            [host: 'localhost', port: 8080, url: '/test2', expires: 2000]
+                            [host: 'localhost', port: 8080, url: '/test2', expires: 2000, staleIfError: 0]
                         ]
                     }
                 }
@@ -69,6 +106,21 @@ class ApiGatewayRepositorySpec extends Specification {
             apiGateway2 {
                 port = 7001
                 host = 'localhost'
+                upstream {
+                    maxPoolSize = 64
+                    keepAliveTimeout = 30
+                    pipelining = true
+                    connectTimeout = 1000
+                    maxWaitQueueSize = 256
+                    http2MaxPoolSize = 2
+                    http2MultiplexingLimit = 100
+                    compression = true
+                }
+                workerPool {
+                    poolSize = 4
+                    queueSize = 16
+                    blockedThreshold = 20
+                }
                 circuitBreaker {
                     maxFailures = 5
                     timeout = 10000
@@ -98,7 +150,7 @@ class ApiGatewayRepositorySpec extends Specification {
                     }
                     "/proxy2" {
                         upstreamURLs = [
-                            [host: 'localhost', port: 8080, url: '/test1',
+                            [host: 'localhost', port: 8080, url: '/test1', protocol: 'h2c', blocking: true,
                              circuitBreaker: [maxFailures: 2, timeout: 3000, resetTimeout: 3000]]
                         ]
                     }
@@ -174,6 +226,31 @@ class ApiGatewayRepositorySpec extends Specification {
         with(ApiGatewayRepository.respository[0]) {
             port == 7000
             name == 'apiGateway1'
+            instances == 4
+            with(serverOptions) {
+                ssl
+                useAlpn
+                keyStoreOptions.path == 'dgate-server.jks'
+                keyStoreOptions.password == 'dcloud'
+                alpnVersions == [HttpVersion.HTTP_2, HttpVersion.HTTP_1_1]
+                initialSettings.initialWindowSize == 1048576
+                tcpNoDelay
+                reusePort
+                acceptBacklog == 2048
+                compressionSupported
+                compressionLevel == 4
+            }
+            compression.level == 4
+            compression.minSize == 512
+            urlConfigs.every { it.compression.is(compression) }
+            !upstreamOptions.tryUseCompression
+            upstreamOptions.maxPoolSize == ApiGatewayRepository.DEFAULT_UPSTREAM_POOL_SIZE
+            upstreamOptions.keepAlive
+            !upstreamOptions.pipelining
+            workerPool.name == 'apiGateway1'
+            workerPool.poolSize == WorkerPoolConfig.DEFAULT_POOL_SIZE
+            workerPool.queueSize == WorkerPoolConfig.DEFAULT_QUEUE_SIZE
+            workerPool.blockedThreshold == WorkerPoolConfig.DEFAULT_BLOCKED_THRESHOLD
             login.login() == '/login'
             login.refreshLimit() == LoginConfig.DEFAULT_REFRESH_LIMIT
             login.refreshExpire() == LoginConfig.DEFAULT_REFRESH_EXPIRE
@@ -201,6 +278,17 @@ class ApiGatewayRepositorySpec extends Specification {
                 upstreamURLs[0].circuitBreaker.maxFailures == 3
                 upstreamURLs[0].circuitBreaker.timeout == 5000
                 upstreamURLs[0].circuitBreaker.resetTimeout == 10000
+                cache.mode == CacheMode.PARTITIONED
+                cache.backups == 1
+                cache.nearCacheSize == 0
+                cache.heapSize == 1048576
+                cache.totalWeight == 5
+                cacheWeight == 1
+                cacheKey == null
+                bodyLimit == 1048576
+                !rawBody
+                !streaming
+                deadline == 0
             }
             urlConfigs[1].expected == [statusCode: 200, payload: [test: true]]
             with(urlConfigs[2]) {
@@ -221,9 +309,21 @@ class ApiGatewayRepositorySpec extends Specification {
                 required == ['param1', 'param2']
                 methods == [HttpMethod.GET, HttpMethod.POST]
                 upstreamURLs.size() == 2
+                staleWhileRevalidate == 3000
+                staleIfError == 60000
+                cacheWeight == 4
+                rawBody
+                streaming
+                deadline == 1500
+                bodyLimit == 4096
+                cacheKey.params == ['param1', 'param2']
+                cacheKey.headers == ['accept-language']
+                cacheKey.claims == ['tenantId']
                 upstreamURLs == [
-                        new UpstreamURL(host: 'localhost', port: 8080, url: '/test1'),
-                        new UpstreamURL(host: 'localhost', port: 8080, url: '/test2', expires: 2000)
+                        new UpstreamURL(host: 'localhost', port: 8080, url: '/test1',
+                                staleWhileRevalidate: 3000, staleIfError: 60000),
+                        new UpstreamURL(host: 'localhost', port: 8080, url: '/test2', expires: 2000,
+                                staleWhileRevalidate: 3000)
                 ]
                 !upstreamURLs[0].before
                 !upstreamURLs[0].after
@@ -238,18 +338,47 @@ class ApiGatewayRepositorySpec extends Specification {
             port == 7001
             host == 'localhost'
             name == 'apiGateway2'
+            instances == ApiGatewayConfig.DEFAULT_INSTANCES
+            !serverOptions.ssl
+            !serverOptions.compressionSupported
+            !compression
+            urlConfigs.every { it.bodyLimit == -1 }
+            serverOptions.alpnVersions == [HttpVersion.HTTP_2, HttpVersion.HTTP_1_1]
+            urlConfigs.every { it.cache.mode == CacheMode.LOCAL }
+            with(upstreamOptions) {
+                maxPoolSize == 64
+                keepAlive
+                keepAliveTimeout == 30
+                pipelining
+                connectTimeout == 1000
+                maxWaitQueueSize == 256
+                http2MaxPoolSize == 2
+                http2MultiplexingLimit == 100
+                tryUseCompression
+            }
+            with(workerPool) {
+                name == 'apiGateway2'
+                poolSize == 4
+                queueSize == 16
+                blockedThreshold == 20
+            }
+            urlConfigs.every { it.workerPool.is(workerPool) }
             !login
             !cors
             urlConfigs.size() == 3
             urlConfigs[0].expected == [get   : [statusCode: 200, payload: [method: 'get']],
                                        post  : [statusCode: 200, payload: [method: 'post']],
                                        delete: [statusCode: 200, payload: [method: 'delete']]]
+            urlConfigs[1].upstreamURLs[0].httpVersion() == HttpVersion.HTTP_1_1
+            urlConfigs[2].upstreamURLs[0].httpVersion() == HttpVersion.HTTP_2
             urlConfigs[1].upstreamURLs[0].circuitBreaker.maxFailures == 5
             urlConfigs[1].upstreamURLs[0].circuitBreaker.timeout == 10000
             urlConfigs[1].upstreamURLs[0].circuitBreaker.resetTimeout == 30000
             urlConfigs[2].upstreamURLs[0].circuitBreaker.maxFailures == 2
             urlConfigs[2].upstreamURLs[0].circuitBreaker.timeout == 3000
             urlConfigs[2].upstreamURLs[0].circuitBreaker.resetTimeout == 3000
+            !urlConfigs[1].upstreamURLs[0].blocking
+            urlConfigs[2].upstreamURLs[0].blocking
         }
         with(ApiGatewayRepository.respository[2]) {
             port == 7002
@@ -265,6 +394,7 @@ class ApiGatewayRepositorySpec extends Specification {
             urlConfigs.size() == 4
             urlConfigs[2].relayTo.host == 'localhost'
             urlConfigs[2].relayTo.port == 8080
+            urlConfigs[2].relayTo.httpVersion() == HttpVersion.HTTP_1_1
             urlConfigs[2].relayTo.circuitBreaker.maxFailures == 3
             urlConfigs[2].relayTo.circuitBreaker.timeout == 5000
             urlConfigs[2].relayTo.circuitBreaker.resetTimeout == 10000
@@ -292,4 +422,196 @@ class ApiGatewayRepositorySpec extends Specification {
         }
     }
 
+    def "unknown upstream protocols should be rejected"() {
+        setup:
+        String config = """
+            apiGateway {
+                port = 7000
+                urls {
+                    "/proxy" {
+                        upstreamURLs = [
+                            [host: 'localhost', port: 8080, url: '/test', protocol: 'spdy']
+                        ]
+                    }
+                }
+            }
+        """
+        ApiGatewayRepository.respository.clear()
+
+        when:
+        ApiGatewayRepository.build(config)
+
+        then:
+        thrown(InvalidConfiguriationException)
+    }
+
+    def "unknown cache modes should be rejected"() {
+        setup:
+        String config = """
+            apiGateway {
+                port = 7000
+                cache {
+                    mode = 'distributed'
+                }
+                urls {
+                    "/proxy" {
+                        upstreamURLs = [
+                            [host: 'localhost', port: 8080, url: '/test']
+                        ]
+                    }
+                }
+            }
+        """
+        ApiGatewayRepository.respository.clear()
+
+        when:
+        ApiGatewayRepository.build(config)
+
+        then:
+        thrown(InvalidConfiguriationException)
+    }
+
+    @Unroll
+    def "compression level #level should be rejected"() {
+        setup:
+        String config = """
+            apiGateway {
+                port = 7000
+                server {
+                    compression {
+                        level = ${level}
+                    }
+                }
+                urls {
+                    "/mock" {
+                        expected = [statusCode: 200, payload: [test: true]]
+                    }
+                }
+            }
+        """
+        ApiGatewayRepository.respository.clear()
+
+        when:
+        ApiGatewayRepository.build(config)
+
+        then:
+        thrown(InvalidConfiguriationException)
+
+        where:
+        level << [0, 10]
+    }
+
+    def "cache keys should be lists of names"() {
+        setup:
+        String config = """
+            apiGateway {
+                port = 7000
+                urls {
+                    "/proxy" {
+                        expires = 1000
+                        cacheKey {
+                            params = 'page'
+                        }
+                        upstreamURLs = [
+                            [host: 'localhost', port: 8080, url: '/test']
+                        ]
+                    }
+                }
+            }
+        """
+        ApiGatewayRepository.respository.clear()
+
+        when:
+        ApiGatewayRepository.build(config)
+
+        then:
+        thrown(InvalidConfiguriationException)
+    }
+
+    def "ssl without a keyStore should be rejected"() {
+        setup:
+        String config = """
+            apiGateway {
+                port = 7000
+                server {
+                    ssl = true
+                }
+                urls {
+                    "/mock" {
+                        expected = [statusCode: 200, payload: [test: true]]
+                    }
+                }
+            }
+        """
+        ApiGatewayRepository.respository.clear()
+
+        when:
+        ApiGatewayRepository.build(config)
+
+        then:
+        thrown(InvalidConfiguriationException)
+    }
+
+    def "dependencies between upstreamURLs should be parsed"() {
+        setup:
+        String config = """
+            apiGateway {
+                port = 7000
+                urls {
+                    "/chain" {
+                        upstreamURLs = [
+                            [host: 'localhost', port: 8080, url: '/user', name: 'user'],
+                            [host: 'localhost', port: 8080, url: '/orders/:userId', name: 'orders',
+                             dependsOn: 'user', params: [userId: 'user.id']],
+                            [host: 'localhost', port: 8080, url: '/items', dependsOn: ['user', 'orders'],
+                             params: [userId: 'user.id', orderId: 'orders.items.0.id']]
+                        ]
+                    }
+                }
+            }
+        """
+        ApiGatewayRepository.respository.clear()
+
+        when:
+        ApiGatewayRepository.build(config)
+        List<UpstreamURL> upstreamURLs = ApiGatewayRepository.respository[0].urlConfigs[0].upstreamURLs
+
+        then:
+        upstreamURLs*.name == ['user', 'orders', null]
+        upstreamURLs*.dependsOn == [[], ['user'], ['user', 'orders']]
+        upstreamURLs[2].params == [userId: 'user.id', orderId: 'orders.items.0.id']
+        upstreamURLs[2].withDependencies(new JsonObject([page: 1]),
+                [user  : new JsonObject([id: 7]),
+                 orders: new JsonObject([items: [[id: 42]]])]).map == [page: 1, userId: 7, orderId: 42]
+    }
+
+    @Unroll
+    def "#problem dependencies between upstreamURLs should be rejected"() {
+        setup:
+        String config = """
+            apiGateway {
+                port = 7000
+                urls {
+                    "/chain" {
+                        upstreamURLs = ${urls}
+                    }
+                }
+            }
+        """
+        ApiGatewayRepository.respository.clear()
+
+        when:
+        ApiGatewayRepository.build(config)
+
+        then:
+        thrown(InvalidConfiguriationException)
+
+        where:
+        problem      | urls
+        'duplicated' | "[[host: 'localhost', port: 8080, url: '/a', name: 'a'], [host: 'localhost', port: 8080, url: '/b', name: 'a']]"
+        'unknown'    | "[[host: 'localhost', port: 8080, url: '/a', name: 'a', dependsOn: ['b']]]"
+        'undeclared' | "[[host: 'localhost', port: 8080, url: '/a', name: 'a'], [host: 'localhost', port: 8080, url: '/b', params: [id: 'a.id']]]"
+        'cyclic'     | "[[host: 'localhost', port: 8080, url: '/a', name: 'a', dependsOn: ['c']], [host: 'localhost', port: 8080, url: '/b', name: 'b', dependsOn: ['a']], [host: 'localhost', port: 8080, url: '/c', name: 'c', dependsOn: ['b']]]"
+    }
+
 }
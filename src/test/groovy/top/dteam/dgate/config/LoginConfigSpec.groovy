@@ -27,13 +27,15 @@ class LoginConfigSpec extends Specification {
         loginConfig.only() == (config.only ?: [])
         loginConfig.refreshLimit() == (config.refreshLimit ?: LoginConfig.DEFAULT_REFRESH_LIMIT)
         loginConfig.refreshExpire() == (config.refreshExpire ?: LoginConfig.DEFAULT_REFRESH_EXPIRE)
+        loginConfig.tokenCacheSize() == (config.tokenCacheSize ?: LoginConfig.DEFAULT_TOKEN_CACHE_SIZE)
 
         where:
         config << [
                 [url: '/login1', ignore: ['/url1', '/url2']],
                 [url: '/login1', only: ['/url3']],
                 [url: '/login1', refreshLimit: 3000],
-                [url: '/login1', refreshExpire: 4000]
+                [url: '/login1', refreshExpire: 4000],
+                [url: '/login1', tokenCacheSize: 100]
         ]
     }
 
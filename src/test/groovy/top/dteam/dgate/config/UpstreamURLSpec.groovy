@@ -21,6 +21,8 @@ class UpstreamURLSpec extends Specification {
         url    | context                            | finalUrl
         '/x'   | new JsonObject([x: 'test'])        | '/x'
         '/x/y' | new JsonObject([x: 'x1', y: 'y1']) | '/x/y'
+        '/x/'  | new JsonObject([x: 'test'])        | '/x/'
+        '/'    | new JsonObject([:])                | '/'
     }
 
     @Unroll
@@ -40,6 +42,7 @@ class UpstreamURLSpec extends Specification {
         '/y/:x'       | new JsonObject([x: 'x1'])          | '/y/x1'
         '/:x/:y'      | new JsonObject([x: 'x1', y: 'y1']) | '/x1/y1'
         '/:x/test/:y' | new JsonObject([x: 'x1', y: 'y1']) | '/x1/test/y1'
+        '/y/:x/'      | new JsonObject([x: 'x1'])          | '/y/x1/'
     }
 
     @Unroll
@@ -84,6 +87,9 @@ class UpstreamURLSpec extends Specification {
         '/:x?/test/:y?' | new JsonObject([x: 'x1'])          | '/x1/test'
         '/:x?/:y?'      | new JsonObject([:])                | '/'
         '/:x?/:y?/:z?'  | new JsonObject([:])                | '/'
+        '/y/:x?/'       | new JsonObject([x: 'x1'])          | '/y/x1/'
+        '/y/:x?/'       | new JsonObject([:])                | '/y/'
+        '/:x?/'         | new JsonObject([:])                | '/'
     }
 
     @Unroll
@@ -105,4 +111,35 @@ class UpstreamURLSpec extends Specification {
         '/:x?/:y'       | new JsonObject([:])
     }
 
+    @Unroll
+    def "substituted values should be percent-encoded: #value"() {
+        setup:
+        UpstreamURL upstreamURL = new UpstreamURL(host: 'localhost', port: 8080, url: '/x/:y')
+
+        expect:
+        upstreamURL.resolve(new JsonObject([y: value])) == finalUrl
+
+        where:
+        value     | finalUrl
+        'a b'     | '/x/a%20b'
+        'a/b'     | '/x/a%2Fb'
+        'a?b#c'   | '/x/a%3Fb%23c'
+        '中文'     | '/x/%E4%B8%AD%E6%96%87'
+        '😀'      | '/x/%F0%9F%98%80'
+        'a-b_c~d' | '/x/a-b_c~d'
+        42        | '/x/42'
+    }
+
+    def "setting the url should recompile its template"() {
+        setup:
+        UpstreamURL upstreamURL = new UpstreamURL(host: 'localhost', port: 8080, url: '/:x')
+
+        when:
+        upstreamURL.url = '/y/:x'
+
+        then:
+        upstreamURL.resolve(new JsonObject([x: 'x1'])) == '/y/x1'
+        upstreamURL.copy().resolve(new JsonObject([x: 'x2'])) == '/y/x2'
+    }
+
 }
@@ -1,8 +1,15 @@
 package top.dteam.dgate.gateway
 
+import io.vertx.core.DeploymentOptions
 import io.vertx.core.Vertx
+import io.vertx.core.http.HttpClient
+import io.vertx.core.http.HttpClientOptions
 import io.vertx.core.http.HttpMethod
 import io.vertx.core.http.HttpServer
+import io.vertx.core.http.HttpServerOptions
+import io.vertx.core.http.HttpVersion
+import io.vertx.core.net.JksOptions
+import io.vertx.core.net.OpenSSLEngineOptions
 import io.vertx.core.json.JsonObject
 import io.vertx.ext.auth.jwt.JWTAuth
 import io.vertx.ext.web.Router
@@ -20,6 +27,8 @@ class ApiGatewaySpec extends Specification {
     private static final int GATEWAY_PORT_WITH_LOGIN = 7001
     private static final int GATEWAY_PORT_WITH_LOGIN_IGNORE = 7002
     private static final int GATEWAY_PORT_WITH_LOGIN_ONLY = 7003
+    private static final int GATEWAY_PORT_WITH_INSTANCES = 7004
+    private static final int GATEWAY_PORT_WITH_TLS = 7005
 
     Vertx vertx
     HttpServer destServer
@@ -125,6 +134,63 @@ class ApiGatewaySpec extends Specification {
         '/login'     | 200
     }
 
+    def "instances of a gateway should share its port"() {
+        setup:
+        ApiGatewayConfig config = prepareConfig()
+        config.port = GATEWAY_PORT_WITH_INSTANCES
+        config.instances = 4
+        String deploymentId
+        List<SimpleResponse> results = []
+
+        when:
+        vertx.deployVerticle({ new ApiGateway(config) }, new DeploymentOptions().setInstances(config.instances)) {
+            deploymentId = it.result()
+        }
+        TestUtils.waitResult(deploymentId, 1500)
+        sleep(100)
+        8.times {
+            requestUtils.get("localhost", GATEWAY_PORT_WITH_INSTANCES, '/forward', new JsonObject()) { simpleResponse ->
+                results << simpleResponse
+            }
+        }
+        sleep(1500)
+
+        then:
+        vertx.deploymentIDs().contains(deploymentId)
+        results.size() == 8
+        results.every { it.statusCode == 200 }
+    }
+
+    def "should serve h2 over tls with alpn"() {
+        setup:
+        ApiGatewayConfig config = prepareConfig()
+        config.port = GATEWAY_PORT_WITH_TLS
+        config.serverOptions = new HttpServerOptions().setSsl(true).setUseAlpn(true)
+                .setKeyStoreOptions(new JksOptions().setPath('dgate-server.jks').setPassword('dcloud'))
+                .setOpenSslEngineOptions(new OpenSSLEngineOptions())
+        HttpClient client = vertx.createHttpClient(new HttpClientOptions().setSsl(true).setTrustAll(true)
+                .setUseAlpn(true).setProtocolVersion(HttpVersion.HTTP_2)
+                .setOpenSslEngineOptions(new OpenSSLEngineOptions()))
+        HttpVersion version
+        int statusCode
+
+        when:
+        vertx.deployVerticle(new ApiGateway(config))
+        sleep(500)
+        client.getNow(GATEWAY_PORT_WITH_TLS, 'localhost', '/mock-get') { response ->
+            version = response.version()
+            statusCode = response.statusCode()
+        }
+        TestUtils.waitResult(version, 1500)
+
+        then:
+        version == HttpVersion.HTTP_2
+        statusCode == 200
+
+        cleanup:
+        client.close()
+    }
+
     private HttpServer createDestServer() {
         HttpServer httpServer = vertx.createHttpServer()
         Router destRouter = Router.router(vertx)
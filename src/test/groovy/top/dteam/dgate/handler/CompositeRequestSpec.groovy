@@ -11,7 +11,9 @@ import spock.lang.Unroll
 import top.dteam.dgate.config.ProxyUrlConfig
 import top.dteam.dgate.config.UpstreamURL
 import top.dteam.dgate.config.UrlConfig
+import top.dteam.dgate.config.WorkerPoolConfig
 import top.dteam.dgate.gateway.SimpleResponse
+import top.dteam.dgate.monitor.ClosureMetrics
 import top.dteam.dgate.utils.RequestUtils
 import top.dteam.dgate.utils.TestUtils
 import top.dteam.dgate.utils.Utils
@@ -20,6 +22,7 @@ class CompositeRequestSpec extends Specification {
 
     private static final long OP_TIMEOUT = 1800
     private static final long RESET_TIMEOUT = 4000
+    private static final String GATEWAY = 'compositeGateway'
 
     Vertx vertx
     HttpServer gate
@@ -109,6 +112,149 @@ class CompositeRequestSpec extends Specification {
         "delete" | new JsonObject([method: "delete"]) | HttpMethod.DELETE
     }
 
+    def "time spent in before and after closures should be recorded per url"() {
+        setup:
+        List<SimpleResponse> results = []
+        long before = closureCount('before')
+        long after = closureCount('after')
+
+        when:
+        sleep(100)
+        3.times {
+            requestUtils.get("localhost", 8081, "/timedClosures", new JsonObject()) { simpleResponse ->
+                results << simpleResponse
+            }
+        }
+        sleep(1500)
+
+        then:
+        results.every { it.payload.getString('after') == 'after' && it.payload.getJsonObject('params1').getString('before') == 'before' }
+        closureCount('before') - before == 3
+        closureCount('after') - after == 3
+        ClosureMetrics.stats(GATEWAY).getJsonObject('/timedClosures').getJsonObject('after').getDouble('maxMillis') > 0
+    }
+
+    def "closures of blocking upstreamURLs should run on the worker pool, and be refused when it is full"() {
+        setup:
+        List<SimpleResponse> results = []
+
+        when:
+        sleep(100)
+        3.times {
+            requestUtils.get("localhost", 8081, "/blocking", new JsonObject()) { simpleResponse ->
+                results << simpleResponse
+            }
+        }
+        sleep(1500)
+
+        then:
+        results.size() == 3
+        results.findAll { it.statusCode == 200 }.every {
+            it.payload.getJsonObject('params1').getString('thread').startsWith('dgate-closures-blockingGateway')
+        }
+        results.count { it.statusCode == 503 } >= 1
+    }
+
+    def "blocking upstreamURLs without closures should not be refused when the worker pool is full"() {
+        setup:
+        SimpleResponse blocked
+        SimpleResponse result
+
+        when:
+        sleep(100)
+        requestUtils.get("localhost", 8081, "/blocking", new JsonObject()) { simpleResponse ->
+            blocked = simpleResponse
+        }
+        sleep(100)
+        requestUtils.get("localhost", 8081, "/blockingWithoutClosures", new JsonObject()) { simpleResponse ->
+            result = simpleResponse
+        }
+        TestUtils.waitResult(result, 1500)
+        TestUtils.waitResult(blocked, 1500)
+
+        then:
+        blocked.statusCode == 200
+        result.statusCode == 200
+        result.payload.getString('method1') == 'GET'
+    }
+
+    @Unroll
+    def "[#url] should be streamed with status code: #statusCode"() {
+        setup:
+        SimpleResponse result
+
+        when:
+        sleep(100)
+        requestUtils.get("localhost", 8081, url, new JsonObject()) { simpleResponse ->
+            result = simpleResponse
+        }
+        TestUtils.waitResult(result, 1500)
+
+        then:
+        result.statusCode == statusCode
+        result.payload.getString('method1') == method1
+        result.payload.getString('method2') == method2
+
+        where:
+        url                         | statusCode | method1 | method2
+        '/streaming/allSuccess'     | 200        | 'GET'   | 'GET'
+        '/streaming/partialSuccess' | 200        | 'GET'   | 'GET'
+        '/streaming/allFailure'     | 500        | 'GET'   | 'GET'
+        '/streaming/firstWins'      | 200        | 'GET'   | null
+    }
+
+    @Unroll
+    def "[#url] should answer with what it has at the deadline"() {
+        setup:
+        SimpleResponse result
+
+        when:
+        sleep(100)
+        requestUtils.get("localhost", 8081, url, new JsonObject()) { simpleResponse ->
+            result = simpleResponse
+        }
+        TestUtils.waitResult(result, 1500)
+
+        then:
+        result.statusCode == statusCode
+        result.payload.getString('method2') == method2
+        result.payload.getJsonObject('localhost-8082-/slow')?.getString('error') == missing
+
+        where:
+        url                    | statusCode | method2 | missing
+        '/deadline/partial'    | 206        | 'GET'   | 'No response within the deadline of 150 ms.'
+        '/deadline/allMissing' | 504        | null    | 'No response within the deadline of 150 ms.'
+        '/deadline/inTime'     | 200        | 'GET'   | null
+    }
+
+    @Unroll
+    def "[#url] should call upstreamURLs after the ones they depend on"() {
+        setup:
+        SimpleResponse result
+
+        when:
+        sleep(100)
+        requestUtils.get("localhost", 8081, url, new JsonObject()) { simpleResponse ->
+            result = simpleResponse
+        }
+        TestUtils.waitResult(result, 1500)
+
+        then:
+        result.statusCode == statusCode
+        result.payload.getString('method2') == 'GET'
+        result.payload.getJsonArray('orders')?.list == orders
+        result.payload.getJsonObject('localhost-8082-/orders/:userId')?.getString('error') == error
+
+        where:
+        url                       | statusCode | orders          | error
+        '/dependencies/succeeded' | 200        | ['7', 7, 'GET'] | null
+        '/dependencies/failed'    | 206        | null            | "Depends on 'user', which failed."
+    }
+
+    private static long closureCount(String closure) {
+        ClosureMetrics.stats(GATEWAY).getJsonObject('/timedClosures')?.getJsonObject(closure)?.getLong('count') ?: 0
+    }
+
 
     private HttpServer createGate() {
         HttpServer httpServer = vertx.createHttpServer()
@@ -165,6 +311,65 @@ class CompositeRequestSpec extends Specification {
                                                 .setTimeout(OP_TIMEOUT).setResetTimeout(RESET_TIMEOUT))
                         )
                 )))
+        router.route("/timedClosures").handler(new SubProxyHandler(vertx,
+                new ProxyUrlConfig(url: "/timedClosures",
+                        upstreamURLs: Arrays.asList(
+                                new UpstreamURL(host: "localhost", port: 8082, url: "/success1", before: { params ->
+                                    params.put("before", paramForBefore)
+                                    params
+                                }),
+                                new UpstreamURL(host: "localhost", port: 8082, url: "/success2", after: { simpleResponse ->
+                                    simpleResponse.payload.put("after", paramForAfter)
+                                    simpleResponse
+                                })
+                        )
+                )).nameOfApiGateway(GATEWAY))
+        [allSuccess    : ['/success1', '/success2'],
+         partialSuccess: ['/failure1', '/success2'],
+         allFailure    : ['/failure1', '/failure2'],
+         firstWins     : ['/slow', '/success1']].each { name, urls ->
+            router.route("/streaming/${name}").handler(new ProxyHandler(vertx,
+                    new ProxyUrlConfig(url: "/streaming/${name}", streaming: true,
+                            upstreamURLs: urls.collect { new UpstreamURL(host: "localhost", port: 8082, url: it) })))
+        }
+        [partial   : [150, ['/slow', '/success2']],
+         allMissing: [150, ['/slow']],
+         inTime    : [1000, ['/slow', '/success2']]].each { name, deadlineAndUrls ->
+            router.route("/deadline/${name}").handler(new ProxyHandler(vertx,
+                    new ProxyUrlConfig(url: "/deadline/${name}", deadline: deadlineAndUrls[0],
+                            upstreamURLs: deadlineAndUrls[1].collect {
+                                new UpstreamURL(host: "localhost", port: 8082, url: it)
+                            })))
+        }
+        [succeeded: '/user', failed: '/failure1'].each { name, userURL ->
+            router.route("/dependencies/${name}").handler(new ProxyHandler(vertx,
+                    new ProxyUrlConfig(url: "/dependencies/${name}",
+                            upstreamURLs: Arrays.asList(
+                                    new UpstreamURL(host: "localhost", port: 8082, url: "/orders/:userId",
+                                            dependsOn: ['user'], params: [userId: 'user.user.id']),
+                                    new UpstreamURL(host: "localhost", port: 8082, url: userURL, name: 'user'),
+                                    new UpstreamURL(host: "localhost", port: 8082, url: "/success2")
+                            ))))
+        }
+        router.route("/blocking").handler(new ProxyHandler(vertx,
+                new ProxyUrlConfig(url: "/blocking",
+                        workerPool: new WorkerPoolConfig(name: 'blockingGateway', poolSize: 1, queueSize: 1),
+                        upstreamURLs: Arrays.asList(
+                                new UpstreamURL(host: "localhost", port: 8082, url: "/success1", blocking: true,
+                                        before: { params ->
+                                            sleep(300)
+                                            params.put("thread", Thread.currentThread().name)
+                                            params
+                                        })
+                        )
+                )))
+        router.route("/blockingWithoutClosures").handler(new ProxyHandler(vertx,
+                new ProxyUrlConfig(url: "/blockingWithoutClosures",
+                        workerPool: new WorkerPoolConfig(name: 'blockingGateway', poolSize: 1, queueSize: 1),
+                        upstreamURLs: Arrays.asList(
+                                new UpstreamURL(host: "localhost", port: 8082, url: "/success1", blocking: true)
+                        )
+                )))
 
         httpServer
     }
@@ -198,6 +403,24 @@ class CompositeRequestSpec extends Specification {
             }
         }
 
+        router.route("/user").handler { routingContext ->
+            Utils.fireJsonResponse(routingContext.response(), 200, [user: [id: 7]])
+        }
+
+        router.route("/orders/:userId").handler { routingContext ->
+            routingContext.request().bodyHandler { totalBuffer ->
+                Utils.fireJsonResponse(routingContext.response(), 200,
+                        [orders: [routingContext.pathParam('userId'), totalBuffer.toJsonObject().getValue('userId'),
+                                  routingContext.request().method()]])
+            }
+        }
+
+        router.route("/slow").handler { routingContext ->
+            vertx.setTimer(300) {
+                Utils.fireJsonResponse(routingContext.response(), 200, [method1: 'slow'])
+            }
+        }
+
         router.route("/failure2").handler { routingContext ->
             routingContext.request().bodyHandler { totalBuffer ->
                 Utils.fireJsonResponse(routingContext.response(), 500,
@@ -0,0 +1,119 @@
+package top.dteam.dgate.handler
+
+import io.vertx.core.Handler
+import io.vertx.core.buffer.Buffer
+import io.vertx.core.http.HttpServerRequest
+import io.vertx.core.http.HttpServerResponse
+import io.vertx.core.json.JsonObject
+import spock.lang.Specification
+import top.dteam.dgate.gateway.SimpleResponse
+
+import java.lang.ref.WeakReference
+
+class CompositeResponseWriterSpec extends Specification {
+
+    private static final int WRITE_QUEUE_SIZE = 64 * 1024
+    private static final String FIELD = 'x' * 16 * 1024
+
+    // a client reading nothing until it is drained, the bytes written to it wait in the write queue
+    Buffer written = Buffer.buffer()
+    int queued
+    int peakQueued
+    boolean ended
+    Handler<Void> drainHandler
+    HttpServerResponse response = Stub(HttpServerResponse)
+
+    def setup() {
+        response.setStatusCode(_) >> response
+        response.setChunked(_) >> response
+        response.putHeader(_ as String, _ as String) >> response
+        response.write(_ as String) >> { String chunk -> queue(Buffer.buffer(chunk)) }
+        response.write(_ as Buffer) >> { Buffer chunk -> queue(chunk) }
+        response.end(_ as String) >> { String chunk -> queue(Buffer.buffer(chunk)); ended = true }
+        response.writeQueueFull() >> { queued >= WRITE_QUEUE_SIZE }
+        response.drainHandler(_) >> { Handler<Void> handler -> drainHandler = handler; response }
+        response.closed() >> false
+    }
+
+    def "parts should wait as they are while the client is slow, instead of piling up encoded"() {
+        setup:
+        CompositeResponseWriter writer = new CompositeResponseWriter(Stub(HttpServerRequest), response, 8, { 200 })
+        List<JsonObject> payloads = (1..8).collect { part -> payload(part, 64) }
+        int total = payloads.sum { it.toBuffer().length() } as int
+
+        when: 'all the parts arrive before the client reads anything'
+        payloads.each { writer.write(new SimpleResponse(statusCode: 200, payload: it)) }
+
+        then:
+        !ended
+        peakQueued < total / 16
+
+        when:
+        drainUntilEnded()
+        JsonObject body = written.toJsonObject()
+
+        then:
+        peakQueued < total / 16
+        body.size() == 8 * 64
+        body.getString('part8-field64') == FIELD
+    }
+
+    def "a part should be dropped once it is written"() {
+        setup:
+        CompositeResponseWriter writer = new CompositeResponseWriter(Stub(HttpServerRequest), response, 3, { 200 })
+        List<WeakReference<JsonObject>> parts = (1..2).collect { part ->
+            JsonObject payload = payload(part, 64)
+            writer.write(new SimpleResponse(statusCode: 200, payload: payload))
+            new WeakReference<JsonObject>(payload)
+        }
+
+        when: 'the client reads what has been written, the last part is still to come'
+        while (drainHandler) {
+            drain()
+        }
+        collectGarbage()
+
+        then:
+        parts.every { it.get() == null }
+        !ended
+
+        when:
+        writer.write(new SimpleResponse(statusCode: 200, payload: payload(3, 1)))
+        drainUntilEnded()
+
+        then:
+        written.toJsonObject().size() == 2 * 64 + 1
+    }
+
+    private void queue(Buffer chunk) {
+        written.appendBuffer(chunk)
+        queued += chunk.length()
+        peakQueued = Math.max(peakQueued, queued)
+    }
+
+    private void drain() {
+        queued = 0
+        Handler<Void> handler = drainHandler
+        drainHandler = null
+        handler?.handle(null)
+    }
+
+    private void drainUntilEnded() {
+        int drains = 0
+        while (!ended && drains++ < 1000) {
+            drain()
+        }
+    }
+
+    private static JsonObject payload(int part, int fields) {
+        new JsonObject((1..fields).collectEntries { ["part${part}-field${it}".toString(), FIELD] })
+    }
+
+    private static void collectGarbage() {
+        3.times {
+            System.gc()
+            sleep(50)
+        }
+    }
+
+}
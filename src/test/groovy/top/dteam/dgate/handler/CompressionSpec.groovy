@@ -0,0 +1,224 @@
+package top.dteam.dgate.handler
+
+import io.vertx.core.Vertx
+import io.vertx.core.VertxOptions
+import io.vertx.core.buffer.Buffer
+import io.vertx.core.http.HttpClient
+import io.vertx.core.http.HttpServer
+import io.vertx.core.json.JsonObject
+import io.vertx.ext.web.Router
+import spock.lang.Specification
+import top.dteam.dgate.config.ApiGatewayRepository
+import top.dteam.dgate.gateway.ApiGateway
+import top.dteam.dgate.utils.TestUtils
+import top.dteam.dgate.utils.Utils
+import top.dteam.dgate.utils.cache.CacheLocator
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class CompressionSpec extends Specification {
+
+    private static final String CONFIG = '''
+        apiGateway {
+            port = 9020
+            server {
+                compression {
+                    minSize = 100
+                }
+            }
+            upstream {
+                compression = true
+            }
+            urls {
+                "/json" {
+                    upstreamURLs = [
+                        [host: 'localhost', port: 9021, url: '/json']
+                    ]
+                }
+                "/small" {
+                    upstreamURLs = [
+                        [host: 'localhost', port: 9021, url: '/small']
+                    ]
+                }
+                "/cached.txt" {
+                    expires = 7000
+                    relayTo {
+                        host = 'localhost'
+                        port = 9021
+                    }
+                }
+                "/stream.txt" {
+                    relayTo {
+                        host = 'localhost'
+                        port = 9021
+                    }
+                }
+            }
+        }
+    '''
+
+    private static final String TEXT = 'dgate ' * 100
+    private static final byte[] GZIPPED_TEXT = Utils.gzip(TEXT.bytes, 9)
+
+    private static Vertx vertx
+    private static HttpServer mockServer
+    private static HttpClient client
+    private static List<String> upstreamAcceptEncodings = []
+    private static AtomicInteger cachedRequests = new AtomicInteger()
+
+    void setupSpec() {
+        Vertx.clusteredVertx(new VertxOptions(), { res ->
+            if (res.succeeded()) {
+                vertx = res.result()
+                mockServer = createMock()
+                client = vertx.createHttpClient()
+                ApiGatewayRepository.respository.clear()
+                ApiGatewayRepository.build(CONFIG)
+                ApiGatewayRepository.respository.each {
+                    vertx.deployVerticle(new ApiGateway(it))
+                }
+
+                CacheLocator.init(vertx)
+            } else {
+                throw new RuntimeException("Starting up cluster vertx failed.")
+            }
+        })
+
+        TestUtils.waitResult(mockServer, 10000)
+        sleep(1000)
+    }
+
+    void cleanupSpec() {
+        client.close()
+        mockServer.close()
+        CacheLocator.close()
+        vertx.close()
+    }
+
+    def "json responses should be compressed, and asked compressed from upstreams"() {
+        when:
+        Map result = get('/json', 'gzip')
+
+        then:
+        result.response.statusCode() == 200
+        result.response.getHeader('Content-Encoding') == 'gzip'
+        new JsonObject(Buffer.buffer(Utils.gunzip(result.body.bytes))).getString('text') == TEXT
+        upstreamAcceptEncodings.contains('gzip')
+    }
+
+    def "etags of the responses the listener may compress should be weak"() {
+        when:
+        Map gzipped = get('/json', 'gzip')
+        Map plain = get('/json', null)
+        Map notModified = get('/json', null, gzipped.response.getHeader('ETag'))
+
+        then:
+        gzipped.response.getHeader('ETag').startsWith('W/"')
+        plain.response.getHeader('ETag') == gzipped.response.getHeader('ETag')
+        notModified.response.statusCode() == 304
+        notModified.response.getHeader('ETag') == gzipped.response.getHeader('ETag')
+    }
+
+    def "small responses should not be compressed"() {
+        when:
+        Map result = get('/small', 'gzip')
+
+        then:
+        result.response.statusCode() == 200
+        result.response.getHeader('Content-Encoding') in [null, 'identity']
+        new JsonObject(result.body).getString('text') == 'dgate'
+    }
+
+    def "cached responses should be stored compressed and decompressed for the clients not accepting gzip"() {
+        when:
+        Map gzipped = get('/cached.txt', 'gzip, deflate')
+        // responses are put into the cache without waiting for it, the first put creates the cache
+        sleep(500)
+        Map plain = get('/cached.txt', null)
+
+        then:
+        gzipped.response.getHeader('Content-Encoding') == 'gzip'
+        gzipped.response.getHeader('Vary') == 'Accept-Encoding'
+        new String(Utils.gunzip(gzipped.body.bytes)) == TEXT
+        !plain.response.getHeader('Content-Encoding')
+        plain.body.toString() == TEXT
+        cachedRequests.get() == 1
+    }
+
+    def "cached responses stored compressed should be tagged with weak etags"() {
+        when:
+        Map gzipped = get('/cached.txt', 'gzip')
+        Map plain = get('/cached.txt', null)
+        Map notModified = get('/cached.txt', 'gzip', gzipped.response.getHeader('ETag'))
+
+        then:
+        gzipped.response.getHeader('ETag') == Utils.weakEtag(Utils.etag(TEXT.bytes))
+        plain.response.getHeader('ETag') == gzipped.response.getHeader('ETag')
+        notModified.response.statusCode() == 304
+        notModified.response.getHeader('ETag') == gzipped.response.getHeader('ETag')
+    }
+
+    def "relayed responses compressed by the upstream should be passed through"() {
+        when:
+        Map result = get('/stream.txt', 'gzip')
+
+        then:
+        result.response.getHeader('Content-Encoding') == 'gzip'
+        result.body.bytes == GZIPPED_TEXT
+    }
+
+    private static Map get(String url, String acceptEncoding, String ifNoneMatch = null) {
+        Map result = [:]
+        client.get(9020, 'localhost', url) { response ->
+            response.bodyHandler { body ->
+                result.body = body
+                result.response = response
+            }
+        }.with { request ->
+            if (acceptEncoding) {
+                request.putHeader('Accept-Encoding', acceptEncoding)
+            }
+            if (ifNoneMatch) {
+                request.putHeader('If-None-Match', ifNoneMatch)
+            }
+            request.end()
+        }
+        int i = 0
+        while (!result && i++ < 20) {
+            sleep(100)
+        }
+        result
+    }
+
+    private static HttpServer createMock() {
+        HttpServer httpServer = vertx.createHttpServer()
+        Router router = Router.router(vertx)
+        httpServer.requestHandler(router.&accept).listen(9021)
+
+        router.route("/json").handler { routingContext ->
+            String acceptEncoding = routingContext.request().getHeader('Accept-Encoding')
+            upstreamAcceptEncodings << acceptEncoding
+            Buffer body = new JsonObject([text: TEXT]).toBuffer()
+            if (acceptEncoding == 'gzip') {
+                routingContext.response().putHeader('Content-Encoding', 'gzip')
+                        .end(Buffer.buffer(Utils.gzip(body.bytes, 6)))
+            } else {
+                routingContext.response().end(body)
+            }
+        }
+        router.route("/small").handler { routingContext ->
+            Utils.fireJsonResponse(routingContext.response(), 200, [text: 'dgate'])
+        }
+        router.route("/cached.txt").handler { routingContext ->
+            cachedRequests.incrementAndGet()
+            routingContext.response().putHeader('Content-Type', 'text/plain').end(TEXT)
+        }
+        router.route("/stream.txt").handler { routingContext ->
+            routingContext.response().putHeader('Content-Type', 'text/plain')
+                    .putHeader('Content-Encoding', 'gzip').end(Buffer.buffer(GZIPPED_TEXT))
+        }
+
+        httpServer
+    }
+
+}
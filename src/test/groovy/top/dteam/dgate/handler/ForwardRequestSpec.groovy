@@ -2,6 +2,7 @@ package top.dteam.dgate.handler
 
 import io.vertx.circuitbreaker.CircuitBreakerOptions
 import io.vertx.core.Vertx
+import io.vertx.core.http.HttpClient
 import io.vertx.core.http.HttpMethod
 import io.vertx.core.http.HttpServer
 import io.vertx.core.json.JsonObject
@@ -95,6 +96,7 @@ class ForwardRequestSpec extends Specification {
     def "should return immediately if Circuit Breaker is opened"() {
         setup:
         SimpleResponse result
+        sleep(100)
         requestsMakingCBOpen()
 
         when:
@@ -191,6 +193,32 @@ class ForwardRequestSpec extends Specification {
         result.payload.toString() == new JsonObject([method: HttpMethod.GET, params: [id: '1']]).toString()
     }
 
+    @Unroll
+    def "raw body should be forwarded as it is unless params are merged: #url"() {
+        setup:
+        HttpClient client = vertx.createHttpClient()
+        String body = '{ "a" :  1 }'
+        JsonObject result
+
+        when:
+        sleep(100)
+        client.post(8081, 'localhost', url) { response ->
+            response.bodyHandler { totalBuffer -> result = totalBuffer.toJsonObject() }
+        }.end(body)
+        TestUtils.waitResult(result, 1500)
+
+        then:
+        result.getString('raw') == forwarded
+
+        cleanup:
+        client.close()
+
+        where:
+        url             | forwarded
+        '/raw-body'     | '{ "a" :  1 }'
+        '/raw-body?b=2' | '{"a":1,"b":"2"}'
+    }
+
     private HttpServer createGate() {
         HttpServer httpServer = vertx.createHttpServer()
         Router router = Router.router(vertx)
@@ -230,6 +258,10 @@ class ForwardRequestSpec extends Specification {
                         circuitBreaker: new CircuitBreakerOptions().setMaxFailures(3)
                                 .setTimeout(OP_TIMEOUT).setResetTimeout(RESET_TIMEOUT))],
                         methods: [HttpMethod.GET, HttpMethod.POST, HttpMethod.DELETE])))
+        router.route("/raw-body").handler(new ProxyHandler(vertx,
+                new ProxyUrlConfig(rawBody: true, upstreamURLs: [new UpstreamURL(host: "localhost", port: 8082, url: "/raw",
+                        circuitBreaker: new CircuitBreakerOptions().setMaxFailures(3)
+                                .setTimeout(OP_TIMEOUT).setResetTimeout(RESET_TIMEOUT))])))
         router.route("/path-params/:id").handler(new ProxyHandler(vertx,
                 new ProxyUrlConfig(upstreamURLs: [new UpstreamURL(host: "localhost", port: 8082, url: "/normal",
                         circuitBreaker: new CircuitBreakerOptions().setMaxFailures(3)
@@ -249,6 +281,11 @@ class ForwardRequestSpec extends Specification {
                          params: totalBuffer.toJsonObject()])
             }
         }
+        router.route("/raw").handler { routingContext ->
+            routingContext.request().bodyHandler { totalBuffer ->
+                Utils.fireJsonResponse(routingContext.response(), 200, [raw: totalBuffer.toString()])
+            }
+        }
         router.route("/timeout").handler { routingContext ->
             routingContext.request().bodyHandler { totalBuffer ->
                 sleep(OP_TIMEOUT + 200)
@@ -2,6 +2,7 @@ package top.dteam.dgate.handler
 
 import io.vertx.core.Vertx
 import io.vertx.core.VertxOptions
+import io.vertx.core.http.HttpClient
 import io.vertx.core.http.HttpMethod
 import io.vertx.core.http.HttpServer
 import io.vertx.core.json.JsonObject
@@ -17,6 +18,8 @@ import top.dteam.dgate.utils.Utils
 import top.dteam.dgate.utils.cache.CacheLocator
 
 import java.time.ZonedDateTime
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 
 class ProxyHandlerWithCacheSpec extends Specification {
     private static final String CONFIG = '''
@@ -39,6 +42,43 @@ class ProxyHandlerWithCacheSpec extends Specification {
                         [host: 'localhost', port: 9001, url: '/random2']
                     ]
                 }
+                "/stale-while-revalidate" {
+                    expires = 1000
+                    staleWhileRevalidate = 5000
+                    upstreamURLs = [
+                        [host: 'localhost', port: 9001, url: '/counter']
+                    ]
+                }
+                "/vary-by-page" {
+                    expires = 7000
+                    cacheKey {
+                        params = ['page']
+                    }
+                    upstreamURLs = [
+                        [host: 'localhost', port: 9001, url: '/page-counter']
+                    ]
+                }
+                "/conditional" {
+                    expires = 1000
+                    staleIfError = 5000
+                    upstreamURLs = [
+                        [host: 'localhost', port: 9001, url: '/versioned']
+                    ]
+                }
+                "/stale-if-error" {
+                    expires = 1000
+                    staleIfError = 5000
+                    upstreamURLs = [
+                        [host: 'localhost', port: 9001, url: '/fail-after-first']
+                    ]
+                }
+                "/deadline" {
+                    deadline = 200
+                    upstreamURLs = [
+                        [host: 'localhost', port: 9001, url: '/slow-counter', expires: 7000],
+                        [host: 'localhost', port: 9001, url: '/random2']
+                    ]
+                }
             }
         }
 
@@ -75,6 +115,8 @@ class ProxyHandlerWithCacheSpec extends Specification {
     private static RequestUtils requestUtils
     private static HttpServer mockServer
     private static HttpServer destServer
+    private static AtomicInteger versionedRequests = new AtomicInteger()
+    private static AtomicInteger versionedNotModified = new AtomicInteger()
 
     void setupSpec() {
         Vertx.clusteredVertx(new VertxOptions(), { res ->
@@ -207,6 +249,150 @@ class ProxyHandlerWithCacheSpec extends Specification {
         }
     }
 
+    def "stale response should be served while it is revalidated"() {
+        setup:
+        SimpleResponse result1
+        SimpleResponse result2
+        SimpleResponse result3
+
+        when:
+        requestUtils.get("localhost", 8001, "/stale-while-revalidate", new JsonObject()) { simpleResponse ->
+            result1 = simpleResponse
+        }
+        TestUtils.waitResult(result1, 2000)
+        sleep(1500)
+        requestUtils.get("localhost", 8001, "/stale-while-revalidate", new JsonObject()) { simpleResponse ->
+            result2 = simpleResponse
+        }
+        TestUtils.waitResult(result2, 2000)
+        sleep(500)
+        requestUtils.get("localhost", 8001, "/stale-while-revalidate", new JsonObject()) { simpleResponse ->
+            result3 = simpleResponse
+        }
+        TestUtils.waitResult(result3, 2000)
+
+        then:
+        result1.payload.getInteger('counter') == 1
+        result2.statusCode == 200
+        result2.payload.getInteger('counter') == 1
+        result3.payload.getInteger('counter') == 2
+    }
+
+    def "stale response should be served when the upstream fails"() {
+        setup:
+        SimpleResponse result1
+        SimpleResponse result2
+
+        when:
+        requestUtils.get("localhost", 8001, "/stale-if-error", new JsonObject()) { simpleResponse ->
+            result1 = simpleResponse
+        }
+        TestUtils.waitResult(result1, 2000)
+        sleep(1500)
+        requestUtils.get("localhost", 8001, "/stale-if-error", new JsonObject()) { simpleResponse ->
+            result2 = simpleResponse
+        }
+        TestUtils.waitResult(result2, 2000)
+
+        then:
+        result1.statusCode == 200
+        result1.payload.getBoolean('first')
+        result2.statusCode == 200
+        result2.payload.getBoolean('first')
+    }
+
+    def "late upstream results should still be cached after the deadline"() {
+        setup:
+        SimpleResponse result1
+        SimpleResponse result2
+
+        when:
+        requestUtils.get("localhost", 8001, "/deadline", new JsonObject()) { simpleResponse ->
+            result1 = simpleResponse
+        }
+        TestUtils.waitResult(result1, 2000)
+        sleep(800)
+        requestUtils.get("localhost", 8001, "/deadline", new JsonObject()) { simpleResponse ->
+            result2 = simpleResponse
+        }
+        TestUtils.waitResult(result2, 2000)
+
+        then:
+        result1.statusCode == 206
+        result1.payload.getInteger('random2') >= 100
+        result1.payload.getJsonObject('localhost-9001-/slow-counter').getString('error')
+                .contains('deadline of 200 ms')
+        result2.statusCode == 200
+        result2.payload.getInteger('slowCounter') == 1
+    }
+
+    def "cache keys should only vary by the declared params"() {
+        setup:
+        SimpleResponse result1
+        SimpleResponse result2
+        SimpleResponse result3
+
+        when:
+        requestUtils.get("localhost", 8001, "/vary-by-page", new JsonObject([page: 1, noise: 'a'])) { simpleResponse ->
+            result1 = simpleResponse
+        }
+        TestUtils.waitResult(result1, 2000)
+        requestUtils.get("localhost", 8001, "/vary-by-page", new JsonObject([noise: 'b', page: 1])) { simpleResponse ->
+            result2 = simpleResponse
+        }
+        TestUtils.waitResult(result2, 2000)
+        requestUtils.get("localhost", 8001, "/vary-by-page", new JsonObject([page: 2, noise: 'a'])) { simpleResponse ->
+            result3 = simpleResponse
+        }
+        TestUtils.waitResult(result3, 2000)
+
+        then:
+        result1.payload.getInteger('counter') == 1
+        result2.payload.getInteger('counter') == 1
+        result3.payload.getInteger('counter') == 2
+    }
+
+    def "conditional requests should be answered and revalidated by the gateway"() {
+        setup:
+        HttpClient client = vertx.createHttpClient()
+        SimpleResponse result1
+        SimpleResponse result2
+        int statusCode
+
+        when:
+        requestUtils.get("localhost", 8001, "/conditional", new JsonObject()) { simpleResponse ->
+            result1 = simpleResponse
+        }
+        sleep(500)
+        client.get(8001, 'localhost', '/conditional') { response ->
+            statusCode = response.statusCode()
+        }.putHeader('If-None-Match', result1.etag).end()
+        sleep(500)
+
+        then:
+        result1.statusCode == 200
+        result1.etag
+        statusCode == 304
+        versionedRequests.get() == 1
+
+        when:
+        sleep(1000)
+        requestUtils.get("localhost", 8001, "/conditional", new JsonObject()) { simpleResponse ->
+            result2 = simpleResponse
+        }
+        TestUtils.waitResult(result2, 2000)
+
+        then:
+        result2.statusCode == 200
+        result2.payload == result1.payload
+        result2.etag == result1.etag
+        versionedRequests.get() == 2
+        versionedNotModified.get() == 1
+
+        cleanup:
+        client.close()
+    }
+
     private static HttpServer createMock() {
         HttpServer httpServer = vertx.createHttpServer()
         Router router = Router.router(vertx)
@@ -222,6 +408,38 @@ class ProxyHandlerWithCacheSpec extends Specification {
                         statusCode: 200, payload: { [random2: new Random().nextInt(100) + 100] }]
                 )
         ))
+        AtomicInteger counter = new AtomicInteger()
+        router.route("/counter").handler { routingContext ->
+            Utils.fireJsonResponse(routingContext.response(), 200, [counter: counter.incrementAndGet()])
+        }
+        AtomicInteger slowCounter = new AtomicInteger()
+        router.route("/slow-counter").handler { routingContext ->
+            vertx.setTimer(500) {
+                Utils.fireJsonResponse(routingContext.response(), 200, [slowCounter: slowCounter.incrementAndGet()])
+            }
+        }
+        AtomicInteger pageCounter = new AtomicInteger()
+        router.route("/page-counter").handler { routingContext ->
+            Utils.fireJsonResponse(routingContext.response(), 200, [counter: pageCounter.incrementAndGet()])
+        }
+        router.route("/versioned").handler { routingContext ->
+            versionedRequests.incrementAndGet()
+            if (routingContext.request().getHeader('If-None-Match') == '"v1"') {
+                versionedNotModified.incrementAndGet()
+                routingContext.response().setStatusCode(304).end()
+            } else {
+                routingContext.response().putHeader('ETag', '"v1"')
+                Utils.fireJsonResponse(routingContext.response(), 200, [version: 1])
+            }
+        }
+        AtomicBoolean failing = new AtomicBoolean()
+        router.route("/fail-after-first").handler { routingContext ->
+            if (failing.getAndSet(true)) {
+                Utils.fireJsonResponse(routingContext.response(), 500, [error: 'failed'])
+            } else {
+                Utils.fireJsonResponse(routingContext.response(), 200, [first: true])
+            }
+        }
 
         httpServer
     }
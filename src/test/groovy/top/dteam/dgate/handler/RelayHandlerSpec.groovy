@@ -1,8 +1,13 @@
 package top.dteam.dgate.handler
 
+import io.vertx.circuitbreaker.CircuitBreakerOptions
 import io.vertx.core.Vertx
+import io.vertx.core.buffer.Buffer
+import io.vertx.core.http.HttpClient
+import io.vertx.core.http.HttpClientOptions
 import io.vertx.core.http.HttpMethod
 import io.vertx.core.http.HttpServer
+import io.vertx.core.http.HttpServerResponse
 import io.vertx.core.json.JsonObject
 import io.vertx.ext.auth.jwt.JWTAuth
 import io.vertx.ext.web.FileUpload
@@ -98,6 +103,58 @@ class RelayHandlerSpec extends Specification {
         result.payload.map.name == 'testGateway'
     }
 
+    def "should stream non-json responses as they are"() {
+        setup:
+        int statusCode
+        String contentType
+        Buffer body
+
+        when:
+        sleep(100)
+        vertx.createHttpClient().getNow(8080, 'localhost', '/export') { response ->
+            statusCode = response.statusCode()
+            contentType = response.getHeader('Content-Type')
+            response.bodyHandler { totalBuffer ->
+                body = totalBuffer
+            }
+        }
+        TestUtils.waitResult(body, 1500)
+        sleep(500)
+
+        then:
+        statusCode == 202
+        contentType == 'text/csv'
+        body.toString() == (1..1000).collect { "line${it},${it}" }.join('\n')
+    }
+
+    def "bodies of requests refused by an open circuit should not stall the connection"() {
+        setup:
+        HttpClient client = vertx.createHttpClient(new HttpClientOptions().setMaxPoolSize(1).setKeepAlive(true))
+        List<Integer> statusCodes = []
+        Closure post
+        post = { int remaining ->
+            client.post(8080, 'localhost', '/down') { response ->
+                response.bodyHandler {
+                    statusCodes << response.statusCode()
+                    if (remaining > 1) {
+                        post(remaining - 1)
+                    }
+                }
+            }.end(Buffer.buffer('x' * 65536))
+        }
+
+        when:
+        sleep(100)
+        post(3)
+        TestUtils.waitResult(statusCodes[2], 3000)
+
+        then:
+        statusCodes == [500, 500, 500]
+
+        cleanup:
+        client.close()
+    }
+
     private HttpServer createDestServer() {
         HttpServer httpServer = vertx.createHttpServer()
         Router router = Router.router(vertx)
@@ -115,6 +172,13 @@ class RelayHandlerSpec extends Specification {
             Utils.fireJsonResponse(routingContext.response(), 200, [names: names])
         }
 
+        router.route("/export").handler { routingContext ->
+            HttpServerResponse response = routingContext.response()
+            response.setStatusCode(202).setChunked(true).putHeader('Content-Type', 'text/csv')
+            (1..1000).each { response.write("line${it},${it}" + (it < 1000 ? '\n' : '')) }
+            response.end()
+        }
+
         router.route("/private").handler { routingContext ->
             Utils.fireJsonResponse(routingContext.response(), 200,
                     [token: new JsonObject(requestUtils.getJwtHeader(routingContext.request())),
@@ -140,7 +204,10 @@ class RelayHandlerSpec extends Specification {
                                            }()]),
                         new RelayUrlConfig(url: "/private", relayTo: [host: 'localhost', port: 8081]),
                         new RelayUrlConfig(url: "/uploadOne", relayTo: [host: 'localhost', port: 8081]),
-                        new RelayUrlConfig(url: "/form", relayTo: [host: 'localhost', port: 8081])
+                        new RelayUrlConfig(url: "/form", relayTo: [host: 'localhost', port: 8081]),
+                        new RelayUrlConfig(url: "/export", relayTo: [host: 'localhost', port: 8081]),
+                        new RelayUrlConfig(url: "/down", relayTo: [host: 'localhost', port: 8089,
+                                circuitBreaker: new CircuitBreakerOptions().setMaxFailures(1).setResetTimeout(60000)])
                 ]
         )
     }
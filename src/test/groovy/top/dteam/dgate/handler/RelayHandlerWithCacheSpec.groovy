@@ -2,6 +2,8 @@ package top.dteam.dgate.handler
 
 import io.vertx.core.Vertx
 import io.vertx.core.VertxOptions
+import io.vertx.core.http.HttpClient
+import io.vertx.core.http.HttpClientResponse
 import io.vertx.core.http.HttpMethod
 import io.vertx.core.http.HttpServer
 import io.vertx.core.json.JsonObject
@@ -17,8 +19,10 @@ import top.dteam.dgate.utils.RequestUtils
 import top.dteam.dgate.utils.TestUtils
 import top.dteam.dgate.utils.Utils
 import top.dteam.dgate.utils.cache.CacheLocator
+import top.dteam.dgate.utils.cache.CachePurger
 
 import java.time.ZonedDateTime
+import java.util.concurrent.atomic.AtomicInteger
 
 class RelayHandlerWithCacheSpec extends Specification {
     private static final Logger logger = LoggerFactory.getLogger(RelayHandlerWithCacheSpec.class)
@@ -34,6 +38,28 @@ class RelayHandlerWithCacheSpec extends Specification {
                         port = 9011
                     }
                 }
+                "/report.csv" {
+                    expires = 7000
+                    relayTo {
+                        host = 'localhost'
+                        port = 9011
+                    }
+                }
+                "/versioned" {
+                    expires = 1000
+                    staleIfError = 5000
+                    relayTo {
+                        host = 'localhost'
+                        port = 9011
+                    }
+                }
+                "/orders" {
+                    expires = 7000
+                    relayTo {
+                        host = 'localhost'
+                        port = 9011
+                    }
+                }
             }
         }
 
@@ -68,6 +94,9 @@ class RelayHandlerWithCacheSpec extends Specification {
     '''
 
     private static Vertx vertx
+    private static AtomicInteger versionedRequests = new AtomicInteger()
+    private static AtomicInteger versionedNotModified = new AtomicInteger()
+    private static List<String> orders = [].asSynchronized()
     private static RequestUtils requestUtils
     private static HttpServer mockServer
     private static HttpServer destServer
@@ -195,6 +224,110 @@ class RelayHandlerWithCacheSpec extends Specification {
         }
     }
 
+    def "non-json responses should be cached with their headers"() {
+        setup:
+        HttpClient client = vertx.createHttpClient()
+        List<HttpClientResponse> responses = []
+        List<String> bodies = []
+
+        when:
+        2.times {
+            client.getNow(9010, 'localhost', '/report.csv') { response ->
+                response.bodyHandler { body ->
+                    responses << response
+                    bodies << body.toString()
+                }
+            }
+            sleep(500)
+        }
+
+        then:
+        responses.size() == 2
+        responses.every { it.statusCode() == 200 }
+        responses.every { it.getHeader('Content-Type') == 'text/csv' }
+        responses.every { it.getHeader('ETag') == '"report"' }
+        !responses[1].getHeader('Set-Cookie')
+        responses.every { !it.getHeader(RequestUtils.CACHE_TAGS_HEADER) }
+        bodies == ["id,report\n1,1\n", "id,report\n1,1\n"]
+
+        when:
+        int purged = CachePurger.purge(new JsonObject([tag: 'csv']))
+        client.getNow(9010, 'localhost', '/report.csv') { response ->
+            response.bodyHandler { body -> bodies << body.toString() }
+        }
+        sleep(500)
+
+        then:
+        purged == 1
+        bodies[2] == "id,report\n1,2\n"
+
+        cleanup:
+        client.close()
+    }
+
+    def "cached responses should be revalidated with conditional requests"() {
+        setup:
+        HttpClient client = vertx.createHttpClient()
+        List<Integer> statusCodes = []
+        List<String> bodies = []
+        Closure get = { Map<String, String> headers ->
+            client.get(9010, 'localhost', '/versioned') { response ->
+                response.bodyHandler { body ->
+                    statusCodes << response.statusCode()
+                    bodies << body.toString()
+                }
+            }.with { request ->
+                headers.each { name, value -> request.putHeader(name, value) }
+                request.end()
+            }
+            sleep(300)
+        }
+
+        when:
+        get([:])
+        get(['If-None-Match': '"v1"'])
+
+        then: 'the gateway answers the conditional request from its cache'
+        statusCodes == [200, 304]
+        bodies == ['versioned', '']
+        versionedRequests.get() == 1
+
+        when:
+        sleep(1000)
+        get(['If-None-Match': '"v0"'])
+        get([:])
+
+        then: 'the expired entry is refreshed by a 304 of the upstream'
+        statusCodes[2..3] == [200, 200]
+        bodies[2..3] == ['versioned', 'versioned']
+        versionedRequests.get() == 2
+        versionedNotModified.get() == 1
+
+        cleanup:
+        client.close()
+    }
+
+    def "concurrent posts should each reach the upstream"() {
+        setup:
+        HttpClient client = vertx.createHttpClient()
+        List<String> bodies = [].asSynchronized()
+
+        when:
+        ['order1', 'order2'].each { order ->
+            client.post(9010, 'localhost', '/orders') { response ->
+                response.bodyHandler { body -> bodies << body.toString() }
+            }.end(order)
+        }
+        sleep(1000)
+
+        then:
+        orders.sort() == ['order1', 'order2']
+        bodies.sort() == ['order1', 'order2']
+
+        cleanup:
+        client.close()
+    }
+
     private static HttpServer createMock() {
         HttpServer httpServer = vertx.createHttpServer()
         Router router = Router.router(vertx)
@@ -205,6 +338,32 @@ class RelayHandlerWithCacheSpec extends Specification {
                         statusCode: 200, payload: { [random1: new Random().nextInt(100)] }]
                 )
         ))
+        AtomicInteger reports = new AtomicInteger()
+        router.route("/report.csv").handler { routingContext ->
+            routingContext.response().putHeader('Content-Type', 'text/csv')
+                    .putHeader('ETag', '"report"')
+                    .putHeader('Set-Cookie', 'session=1')
+                    .putHeader(RequestUtils.CACHE_TAGS_HEADER, 'reports, csv')
+                    .end("id,report\n1,${reports.incrementAndGet()}\n")
+        }
+        router.route("/orders").handler { routingContext ->
+            routingContext.request().bodyHandler { body ->
+                orders << body.toString()
+                vertx.setTimer(300) {
+                    routingContext.response().putHeader('Content-Type', 'text/plain').end(body)
+                }
+            }
+        }
+        router.route("/versioned").handler { routingContext ->
+            versionedRequests.incrementAndGet()
+            if (routingContext.request().getHeader('If-None-Match') == '"v1"') {
+                versionedNotModified.incrementAndGet()
+                routingContext.response().setStatusCode(304).putHeader('ETag', '"v1"').end()
+            } else {
+                routingContext.response().putHeader('Content-Type', 'text/plain')
+                        .putHeader('ETag', '"v1"').end('versioned')
+            }
+        }
 
         httpServer
     }
@@ -0,0 +1,59 @@
+package top.dteam.dgate.utils
+
+import io.vertx.core.Vertx
+import io.vertx.core.json.JsonObject
+import io.vertx.ext.jwt.JWT
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+class JWTTokenRefresherSpec extends Specification {
+
+    Vertx vertx
+
+    void setup() {
+        vertx = Vertx.vertx()
+    }
+
+    void cleanup() {
+        vertx.close()
+    }
+
+    def "concurrent refreshes should not see each other's tokens"() {
+        setup:
+        JWTTokenGenerator tokenGenerator = new JWTTokenGenerator(Utils.createAuthProvider(vertx))
+        JWTTokenRefresher refresher = new JWTTokenRefresher(vertx, 60)
+        JWT jwt = Utils.createJWT(vertx)
+        ExecutorService executor = Executors.newFixedThreadPool(8)
+        List<String> subs = (1..200).collect { "user-${it}".toString() }
+        Map<String, String> tokens = subs.collectEntries { [(it): tokenGenerator.token([sub: it], 10)] }
+
+        when:
+        Map<String, JsonObject> refreshed = subs.collectEntries { sub ->
+            [(sub): executor.submit({
+                JsonObject payload = refresher.decode(tokens[sub])
+                jwt.decode(refresher.refresh(payload))
+            } as Callable<JsonObject>)]
+        }.collectEntries { sub, future -> [(sub): future.get()] }
+
+        then:
+        refreshed.every { sub, payload -> payload.getString('sub') == sub }
+        refreshed.values().every { it.getLong('exp') - it.getLong('iat') == 60 }
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "tokens expired for longer than refreshLimit should not be refreshed"() {
+        setup:
+        JWTTokenRefresher refresher = new JWTTokenRefresher(vertx, 60)
+        long now = System.currentTimeMillis() / 1000 as long
+
+        expect:
+        refresher.lessThan(new JsonObject([exp: now - 10]), 30)
+        !refresher.lessThan(new JsonObject([exp: now - 60]), 30)
+    }
+
+}
@@ -0,0 +1,110 @@
+package top.dteam.dgate.utils
+
+import io.vertx.core.Promise
+import io.vertx.core.Vertx
+import io.vertx.core.http.HttpMethod
+import spock.lang.Unroll
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicInteger
+
+class RequestCoalescerSpec extends Specification {
+
+    Vertx vertx
+
+    void setup() {
+        vertx = Vertx.vertx()
+    }
+
+    void cleanup() {
+        vertx.close()
+    }
+
+    def "concurrent calls of the same key should share one call"() {
+        setup:
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(vertx, 1000)
+        AtomicInteger calls = new AtomicInteger()
+        List<String> results = []
+
+        when:
+        vertx.runOnContext {
+            5.times {
+                coalescer.execute('key', { Promise<String> promise ->
+                    calls.incrementAndGet()
+                    vertx.setTimer(200) { promise.complete('result') }
+                }) { result -> results << result.result() }
+            }
+            coalescer.execute('another', { Promise<String> promise ->
+                calls.incrementAndGet()
+                promise.complete('another')
+            }) { result -> results << result.result() }
+        }
+        sleep(500)
+
+        then:
+        calls.get() == 2
+        results.size() == 6
+        results.count { it == 'result' } == 5
+        coalescer.inFlight() == 0
+    }
+
+    @Unroll
+    def "concurrent #method calls of the same key should share one call: #shared"() {
+        setup:
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(vertx, 1000)
+        AtomicInteger calls = new AtomicInteger()
+
+        when:
+        vertx.runOnContext {
+            2.times {
+                coalescer.execute(method, 'key', { Promise<String> promise ->
+                    calls.incrementAndGet()
+                    vertx.setTimer(200) { promise.complete('result') }
+                }) {}
+            }
+        }
+        sleep(500)
+
+        then:
+        calls.get() == (shared ? 1 : 2)
+
+        where:
+        method            | shared
+        HttpMethod.GET    | true
+        HttpMethod.HEAD   | true
+        HttpMethod.POST   | false
+        HttpMethod.PUT    | false
+        HttpMethod.DELETE | false
+    }
+
+    def "waiters should fall back to their own call after maxWait"() {
+        setup:
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>(vertx, 100)
+        AtomicInteger calls = new AtomicInteger()
+        List<String> results = []
+
+        when:
+        vertx.runOnContext {
+            coalescer.execute('key', { Promise<String> promise ->
+                calls.incrementAndGet()
+                vertx.setTimer(1000) { promise.complete('slow') }
+            }) { result -> results << result.result() }
+            coalescer.execute('key', { Promise<String> promise ->
+                calls.incrementAndGet()
+                promise.complete('fallback')
+            }) { result -> results << result.result() }
+        }
+        sleep(500)
+
+        then:
+        calls.get() == 2
+        results == ['fallback']
+
+        when:
+        sleep(800)
+
+        then:
+        results == ['fallback', 'slow']
+    }
+
+}
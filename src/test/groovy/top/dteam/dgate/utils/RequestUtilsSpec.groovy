@@ -2,8 +2,10 @@ package top.dteam.dgate.utils
 
 import top.dteam.dgate.gateway.SimpleResponse
 import io.vertx.core.Vertx
+import io.vertx.core.http.HttpClientOptions
 import io.vertx.core.http.HttpMethod
 import io.vertx.core.http.HttpServer
+import io.vertx.core.http.HttpVersion
 import io.vertx.core.json.JsonObject
 import io.vertx.ext.web.Router
 import spock.lang.Specification
@@ -63,6 +65,83 @@ class RequestUtilsSpec extends Specification {
         "delete" | new JsonObject([method: "delete"]) | HttpMethod.DELETE | false
     }
 
+    def "requests to the same upstream should share one pooled client"() {
+        setup:
+        UpstreamClientRegistry upstreamClients = new UpstreamClientRegistry(vertx,
+                new HttpClientOptions().setMaxPoolSize(2))
+        RequestUtils pooledRequestUtils = new RequestUtils(upstreamClients)
+        List<SimpleResponse> results = []
+        router.route("/test").handler(createHandler(true))
+
+        when:
+        sleep(100)
+        5.times {
+            pooledRequestUtils.get("localhost", 8081, "/test", new JsonObject()) { simpleResponse ->
+                results << simpleResponse
+            }
+        }
+        sleep(1000)
+        JsonObject stats = upstreamClients.stats()
+
+        then:
+        results.size() == 5
+        stats.size() == 1
+        stats.getJsonObject('localhost:8081').getLong('requests') == 5
+        stats.getJsonObject('localhost:8081').getInteger('connections') <= 2
+        stats.getJsonObject('localhost:8081').getInteger('maxPoolSize') == 2
+
+        cleanup:
+        upstreamClients.close()
+        router.clear()
+    }
+
+    def "h2c upstreams should be requested over HTTP/2 with prior knowledge"() {
+        setup:
+        SimpleResponse result
+        HttpVersion version
+        router.route("/test").handler { routingContext ->
+            version = routingContext.request().version()
+            Utils.fireSingleMessageResponse(routingContext.response(), 200)
+        }
+
+        when:
+        sleep(100)
+        requestUtils.request(HttpVersion.HTTP_2, HttpMethod.GET, "localhost", 8081, "/test", new JsonObject(), null) { simpleResponse ->
+            result = simpleResponse
+        }
+        TestUtils.waitResult(result, 1500)
+
+        then:
+        result.statusCode == 200
+        version == HttpVersion.HTTP_2
+
+        cleanup:
+        router.clear()
+    }
+
+    def "cache tags of upstream responses should be kept"() {
+        setup:
+        SimpleResponse result
+        router.route("/test").handler { routingContext ->
+            routingContext.response().putHeader(RequestUtils.CACHE_TAGS_HEADER, 'product-1, products,')
+            Utils.fireJsonResponse(routingContext.response(), 200, [id: 1])
+        }
+
+        when:
+        sleep(100)
+        requestUtils.get("localhost", 8081, "/test", new JsonObject()) { simpleResponse ->
+            result = simpleResponse
+        }
+        TestUtils.waitResult(result, 1500)
+
+        then:
+        result.statusCode == 200
+        result.cacheTags == ['product-1', 'products']
+
+        cleanup:
+        router.clear()
+    }
+
     private Closure createHandler(boolean hasBody) {
         { routingContext ->
             routingContext.request().bodyHandler({ totalBuffer ->
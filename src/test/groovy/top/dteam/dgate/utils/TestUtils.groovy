@@ -1,5 +1,12 @@
 package top.dteam.dgate.utils
 
+import top.dteam.dgate.utils.cache.CacheKey
+import top.dteam.dgate.utils.cache.CachedResponse
+import top.dteam.dgate.utils.cache.ResponseHolder
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
 class TestUtils {
 
     static void waitResult(def result, long timeout) {
@@ -10,4 +17,16 @@ class TestUtils {
         }
     }
 
+    static CachedResponse getCached(ResponseHolder holder, CacheKey key) {
+        CompletableFuture<CachedResponse> cached = new CompletableFuture<>()
+        holder.get(key) { result -> result.succeeded() ? cached.complete(result.result()) : cached.completeExceptionally(result.cause()) }
+        cached.get(5, TimeUnit.SECONDS)
+    }
+
+    static void putCached(ResponseHolder holder, CacheKey key, CachedResponse response) {
+        CompletableFuture<Void> done = new CompletableFuture<>()
+        holder.put(key, response) { result -> result.succeeded() ? done.complete(null) : done.completeExceptionally(result.cause()) }
+        done.get(5, TimeUnit.SECONDS)
+    }
+
 }
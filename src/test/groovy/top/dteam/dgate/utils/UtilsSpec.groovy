@@ -0,0 +1,57 @@
+package top.dteam.dgate.utils
+
+import io.vertx.core.MultiMap
+import io.vertx.core.http.HttpMethod
+import io.vertx.core.http.HttpServerRequest
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class UtilsSpec extends Specification {
+
+    private static final String LAST_MODIFIED = 'Wed, 21 Oct 2015 07:28:00 GMT'
+
+    @Unroll
+    def "isNotModified should be #expected for #httpMethod with #requestHeaders"() {
+        setup:
+        MultiMap multiMap = MultiMap.caseInsensitiveMultiMap().addAll(requestHeaders)
+        HttpServerRequest request = Stub(HttpServerRequest)
+        request.method() >> httpMethod
+        request.headers() >> multiMap
+        request.getHeader(_) >> { args -> multiMap.get(args[0]) }
+
+        expect:
+        Utils.isNotModified(request, '"v1"', LAST_MODIFIED) == expected
+
+        where:
+        httpMethod      | requestHeaders                                                 | expected
+        HttpMethod.GET  | [:]                                                            | false
+        HttpMethod.GET  | ['If-None-Match': '"v1"']                                      | true
+        HttpMethod.HEAD | ['If-None-Match': '"v0", W/"v1"']                              | true
+        HttpMethod.GET  | ['If-None-Match': '*']                                         | true
+        HttpMethod.GET  | ['If-None-Match': '"v0"']                                      | false
+        HttpMethod.POST | ['If-None-Match': '"v1"']                                      | false
+        HttpMethod.GET  | ['If-Modified-Since': LAST_MODIFIED]                           | true
+        HttpMethod.GET  | ['If-Modified-Since': 'Tue, 20 Oct 2015 07:28:00 GMT']         | false
+        HttpMethod.GET  | ['If-Modified-Since': 'yesterday']                             | false
+        HttpMethod.GET  | ['If-None-Match': '"v0"', 'If-Modified-Since': LAST_MODIFIED]  | false
+    }
+
+    def "etag should only change with the body"() {
+        expect:
+        Utils.etag('a'.bytes) == Utils.etag('a'.bytes)
+        Utils.etag('a'.bytes) != Utils.etag('b'.bytes)
+        Utils.etag('a'.bytes) ==~ /"[0-9a-f]+"/
+    }
+
+    def "weak etags should be left as they are"() {
+        expect:
+        Utils.weakEtag(etag) == weakEtag
+
+        where:
+        etag    | weakEtag
+        '"a"'   | 'W/"a"'
+        'W/"a"' | 'W/"a"'
+        null    | null
+    }
+
+}
@@ -0,0 +1,106 @@
+package top.dteam.dgate.utils
+
+import io.vertx.core.AsyncResult
+import io.vertx.core.Vertx
+import io.vertx.core.json.JsonObject
+import io.vertx.ext.auth.User
+import io.vertx.ext.auth.jwt.JWTAuth
+import spock.lang.Specification
+
+class VerifiedTokensSpec extends Specification {
+
+    Vertx vertx
+    JWTTokenGenerator tokenGenerator
+
+    void setup() {
+        vertx = Vertx.vertx()
+        tokenGenerator = new JWTTokenGenerator(Utils.createAuthProvider(vertx))
+    }
+
+    void cleanup() {
+        vertx.close()
+    }
+
+    def "verified tokens should be kept until they expire"() {
+        setup:
+        VerifiedTokens verifiedTokens = new VerifiedTokens(Utils.createJWT(vertx), 10)
+        String token = tokenGenerator.token([sub: '13572209183', name: 'foxgem'], 2)
+
+        when:
+        JsonObject payload = verifiedTokens.decode(token)
+        payload.put('name', 'changed')
+
+        then:
+        verifiedTokens.size() == 1
+        verifiedTokens.verified(token).getString('name') == 'foxgem'
+        verifiedTokens.decode(token).getString('name') == 'foxgem'
+
+        when:
+        sleep(2100)
+
+        then:
+        verifiedTokens.verified(token) == null
+        verifiedTokens.decode(token).getString('sub') == '13572209183'
+        verifiedTokens.size() == 0
+    }
+
+    def "tokens failing verification should not be kept"() {
+        setup:
+        VerifiedTokens verifiedTokens = new VerifiedTokens(Utils.createJWT(vertx), 10)
+        String token = tokenGenerator.token([sub: '13572209183'], 10)
+
+        when:
+        verifiedTokens.decode(token[0..-3])
+
+        then:
+        thrown(RuntimeException)
+        verifiedTokens.size() == 0
+    }
+
+    def "the least recently used tokens should be dropped beyond capacity"() {
+        setup:
+        VerifiedTokens verifiedTokens = new VerifiedTokens(Utils.createJWT(vertx), 2)
+        long exp = System.currentTimeMillis() / 1000 + 60 as long
+
+        when:
+        verifiedTokens.put('token1', new JsonObject([exp: exp]))
+        verifiedTokens.put('token2', new JsonObject([exp: exp]))
+        verifiedTokens.verified('token1')
+        verifiedTokens.put('token3', new JsonObject([exp: exp]))
+        verifiedTokens.put('token4', new JsonObject([sub: 'without exp']))
+
+        then:
+        verifiedTokens.size() == 2
+        verifiedTokens.verified('token1')
+        !verifiedTokens.verified('token2')
+        verifiedTokens.verified('token3')
+        !verifiedTokens.verified('token4')
+    }
+
+    def "CachingJWTAuth should authenticate verified tokens without the wrapped provider"() {
+        setup:
+        VerifiedTokens verifiedTokens = new VerifiedTokens(Utils.createJWT(vertx), 10)
+        verifiedTokens.put('verified', new JsonObject([sub: '13572209183', exp: System.currentTimeMillis() / 1000 + 60 as long]))
+        JWTAuth jwtAuth = Mock(JWTAuth)
+        CachingJWTAuth cachingJWTAuth = new CachingJWTAuth(jwtAuth, verifiedTokens)
+        AsyncResult<User> result
+
+        when:
+        cachingJWTAuth.authenticate(new JsonObject([jwt: 'verified'])) { result = it }
+
+        then:
+        0 * jwtAuth.authenticate(_, _)
+        result.succeeded()
+        result.result().principal().getString('sub') == '13572209183'
+
+        when:
+        String token = tokenGenerator.token([sub: '13572209183'], 10)
+        cachingJWTAuth = new CachingJWTAuth(Utils.createAuthProvider(vertx), verifiedTokens)
+        cachingJWTAuth.authenticate(new JsonObject([jwt: token])) { result = it }
+
+        then:
+        result.succeeded()
+        verifiedTokens.verified(token).getString('sub') == '13572209183'
+    }
+
+}
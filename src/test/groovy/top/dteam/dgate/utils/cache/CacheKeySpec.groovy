@@ -0,0 +1,47 @@
+package top.dteam.dgate.utils.cache
+
+import io.vertx.core.MultiMap
+import io.vertx.core.json.JsonObject
+import spock.lang.Specification
+import top.dteam.dgate.config.CacheKeyConfig
+
+class CacheKeySpec extends Specification {
+
+    def "keys of the same uri and token should be equal"() {
+        expect:
+        CacheKey.of('/test?a=1', null) == CacheKey.of('/test?a=1', null)
+        CacheKey.of('/test?a=1', new JsonObject([sub: 'user1', role: 'admin'])) ==
+                CacheKey.of('/test?a=1', new JsonObject([sub: 'user1', role: 'admin']))
+        CacheKey.of('/test?a=1', new JsonObject([sub: 'user1'])).hashCode() ==
+                CacheKey.of('/test?a=1', new JsonObject([sub: 'user1'])).hashCode()
+    }
+
+    def "keys of different uris or tokens should not be equal"() {
+        expect:
+        CacheKey.of('/test?a=1', null) != CacheKey.of('/test?a=2', null)
+        CacheKey.of('/test?a=1', null) != CacheKey.of('/test?a=1', new JsonObject())
+        CacheKey.of('/test?a=1', new JsonObject([sub: 'user1'])) !=
+                CacheKey.of('/test?a=1', new JsonObject([sub: 'user2']))
+    }
+
+    def "keys should only vary by the declared params, headers and claims"() {
+        setup:
+        CacheKeyConfig config = new CacheKeyConfig(params: ['page', 'size'], headers: ['accept-language'],
+                claims: ['tenantId'])
+        MultiMap zhHeaders = MultiMap.caseInsensitiveMultiMap().add('Accept-Language', 'zh-CN')
+
+        expect:
+        key(config, [size: 10, page: 1, noise: 'a'], zhHeaders, [tenantId: 't1', sub: 'user1', iat: 1]) ==
+                key(config, [page: 1, size: 10, noise: 'b'], zhHeaders, [tenantId: 't1', sub: 'user2', iat: 2])
+        key(config, [page: 1], zhHeaders, [tenantId: 't1']) != key(config, [page: 2], zhHeaders, [tenantId: 't1'])
+        key(config, [page: 1], zhHeaders, [tenantId: 't1']) != key(config, [page: 1], zhHeaders, [tenantId: 't2'])
+        key(config, [page: 1], zhHeaders, [tenantId: 't1']) !=
+                key(config, [page: 1], MultiMap.caseInsensitiveMultiMap(), [tenantId: 't1'])
+        key(config, [:], MultiMap.caseInsensitiveMultiMap(), null) == CacheKey.of('/test', null)
+    }
+
+    private static CacheKey key(CacheKeyConfig config, Map params, MultiMap headers, Map token) {
+        CacheKey.of('/test', config, { name -> params[name] }, headers, token != null ? new JsonObject(token) : null)
+    }
+
+}
@@ -0,0 +1,118 @@
+package top.dteam.dgate.utils.cache
+
+import io.vertx.core.Vertx
+import io.vertx.core.buffer.Buffer
+import io.vertx.core.http.HttpClientResponse
+import io.vertx.core.json.JsonObject
+import org.apache.ignite.Ignite
+import org.apache.ignite.Ignition
+import org.apache.ignite.configuration.IgniteConfiguration
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder
+import spock.lang.Shared
+import spock.lang.Specification
+import top.dteam.dgate.config.CacheConfig
+import top.dteam.dgate.gateway.AdminServer
+import top.dteam.dgate.utils.TestUtils
+
+class CachePurgerSpec extends Specification {
+
+    private static final int ADMIN_PORT = 7010
+
+    @Shared
+    Vertx vertx
+    @Shared
+    ResponseHolder products
+    @Shared
+    ResponseHolder orders
+    @Shared
+    ResponseHolder upstreamA
+    @Shared
+    ResponseHolder upstreamB
+
+    def setupSpec() {
+        Ignite ignite = Ignition.start(new IgniteConfiguration(igniteInstanceName: 'dgate-purger', localHost: '127.0.0.1'
+                , discoverySpi: new TcpDiscoverySpi(
+                ipFinder: new TcpDiscoveryVmIpFinder(addresses: ['127.0.0.1:47500..47509']))))
+        CacheLocator.init(ignite)
+
+        products = holder('/products')
+        orders = holder('/orders')
+        upstreamA = ResponseHolder.of('gw1', '/composite', 'localhost', 8080, '/a', 60000, 0, 0, 1, new CacheConfig())
+        upstreamB = ResponseHolder.of('gw1', '/composite', 'localhost', 8080, '/b', 60000, 0, 0, 1, new CacheConfig())
+
+        vertx = Vertx.vertx()
+        vertx.deployVerticle(new CachePurger())
+        vertx.deployVerticle(new AdminServer(ADMIN_PORT, AdminServer.DEFAULT_HOST))
+    }
+
+    def cleanupSpec() {
+        vertx.close()
+        CacheLocator.close()
+    }
+
+    def setup() {
+        TestUtils.putCached(products, key('/products?id=1'), CachedResponse.of(new JsonObject([id: 1]), ['product-1']))
+        TestUtils.putCached(products, key('/products?id=2'), CachedResponse.of(new JsonObject([id: 2]), ['product-2']))
+        TestUtils.putCached(orders, key('/orders'), CachedResponse.of(new JsonObject([orders: []])))
+        TestUtils.putCached(upstreamA, key('/a'), CachedResponse.of(new JsonObject([a: true])))
+        TestUtils.putCached(upstreamB, key('/b'), CachedResponse.of(new JsonObject([b: true])))
+    }
+
+    def "responses should be purged by tag"() {
+        expect:
+        CachePurger.purge(new JsonObject([tag: 'product-1'])) == 1
+        !TestUtils.getCached(products, key('/products?id=1'))
+        TestUtils.getCached(products, key('/products?id=2'))
+    }
+
+    def "responses should be purged by gateway and uri prefix"() {
+        expect:
+        CachePurger.purge(new JsonObject([gateway: 'gw1', prefix: '/products?id='])) == 2
+        !TestUtils.getCached(products, key('/products?id=2'))
+        TestUtils.getCached(orders, key('/orders'))
+        CachePurger.purge(new JsonObject([gateway: 'gw2', prefix: '/orders'])) == 0
+    }
+
+    def "caches should be cleared by route or upstream"() {
+        expect:
+        CachePurger.purge(new JsonObject([upstream: 'localhost:8080/a'])) == 1
+        !TestUtils.getCached(upstreamA, key('/a'))
+        TestUtils.getCached(upstreamB, key('/b'))
+        CachePurger.purge(new JsonObject([gateway: 'gw1', route: '/composite'])) == 1
+        !TestUtils.getCached(upstreamB, key('/b'))
+        TestUtils.getCached(orders, key('/orders'))
+    }
+
+    def "purges should be accepted by the admin server"() {
+        setup:
+        HttpClientResponse purged
+        HttpClientResponse rejected
+
+        when:
+        post(new JsonObject([route: '/orders'])) { purged = it }
+        post(new JsonObject()) { rejected = it }
+        TestUtils.waitResult(purged && rejected, 1000)
+        sleep(500)
+
+        then:
+        purged.statusCode() == 202
+        rejected.statusCode() == 400
+        !TestUtils.getCached(orders, key('/orders'))
+        TestUtils.getCached(products, key('/products?id=1'))
+    }
+
+    private void post(JsonObject criteria, Closure handler) {
+        vertx.createHttpClient().post(ADMIN_PORT, AdminServer.DEFAULT_HOST, '/cache/purge', handler)
+                .end(Buffer.buffer(criteria.encode()))
+    }
+
+    private static ResponseHolder holder(String route) {
+        ResponseHolder.of('gw1', route, 60000, 0, 0, 1, new CacheConfig())
+    }
+
+    private static CacheKey key(String uri) {
+        CacheKey.of(uri, null)
+    }
+
+}
@@ -0,0 +1,159 @@
+package top.dteam.dgate.utils.cache
+
+import io.vertx.core.Vertx
+import io.vertx.core.json.JsonObject
+import org.apache.ignite.Ignite
+import org.apache.ignite.IgniteCache
+import org.apache.ignite.Ignition
+import org.apache.ignite.cache.CacheMode
+import org.apache.ignite.cache.CachePeekMode
+import org.apache.ignite.cache.affinity.Affinity
+import org.apache.ignite.configuration.CacheConfiguration
+import org.apache.ignite.configuration.DataRegionConfiguration
+import org.apache.ignite.configuration.DataStorageConfiguration
+import org.apache.ignite.configuration.IgniteConfiguration
+import org.apache.ignite.spi.discovery.tcp.TcpDiscoverySpi
+import org.apache.ignite.spi.discovery.tcp.ipfinder.vm.TcpDiscoveryVmIpFinder
+import spock.lang.Shared
+import spock.lang.Specification
+import top.dteam.dgate.config.CacheConfig
+import top.dteam.dgate.utils.TestUtils
+
+class ResponseHolderSpec extends Specification {
+
+    @Shared
+    Ignite node1
+    @Shared
+    Ignite node2
+
+    def setupSpec() {
+        TcpDiscoveryVmIpFinder ipFinder = new TcpDiscoveryVmIpFinder(addresses: ['127.0.0.1:47500..47509'])
+        node1 = Ignition.start(nodeConfiguration('dgate-node1', ipFinder))
+        node2 = Ignition.start(nodeConfiguration('dgate-node2', ipFinder))
+    }
+
+    def cleanupSpec() {
+        CacheLocator.close()
+        node2?.close()
+    }
+
+    def "responses cached by one node should be served by the others"() {
+        setup:
+        CacheLocator.init(node1)
+        ResponseHolder holder = ResponseHolder.of('apiGateway', '/partitioned', 60000, 0, 0, 1
+                , new CacheConfig(mode: CacheMode.PARTITIONED, backups: 1))
+        CacheKey key = CacheKey.of('/partitioned?a=1', null)
+
+        when:
+        TestUtils.putCached(holder, key, CachedResponse.of(new JsonObject([node: 'node1'])))
+
+        then:
+        node2.cache('apiGateway/partitioned').get(key).payload.getString('node') == 'node1'
+
+        when:
+        node2.cache('apiGateway/partitioned').remove(key)
+
+        then:
+        TestUtils.getCached(holder, key) == null
+    }
+
+    def "lookups and puts should not block the event loop on remote nodes"() {
+        setup:
+        CacheLocator.init(node1)
+        Vertx vertx = Vertx.vertx()
+        ResponseHolder holder = ResponseHolder.of('apiGateway', '/remote', 60000, 0, 0, 1
+                , new CacheConfig(mode: CacheMode.PARTITIONED, backups: 1))
+        TestUtils.putCached(holder, CacheKey.of('/remote', null), CachedResponse.of(new JsonObject()))
+        Affinity<CacheKey> affinity = node1.affinity('apiGateway/remote')
+        List<CacheKey> keys = (1..1000).collect { CacheKey.of("/remote?id=${it}", null) }
+                .findAll { affinity.isPrimary(node2.cluster().localNode(), it) }.take(50)
+        List<String> putThreads = [].asSynchronized()
+        List<String> getThreads = [].asSynchronized()
+        List<Integer> answeredInline = []
+
+        when: 'the entries live on node2, and are put and looked up from an event loop of node1'
+        vertx.runOnContext {
+            keys.eachWithIndex { key, i ->
+                holder.put(key, CachedResponse.of(new JsonObject([id: i]))) { putThreads << Thread.currentThread().name }
+            }
+            answeredInline << putThreads.size()
+        }
+        sleep(1000)
+        vertx.runOnContext {
+            keys.each { key ->
+                holder.get(key) { result -> getThreads << Thread.currentThread().name }
+            }
+            answeredInline << getThreads.size()
+        }
+        sleep(1000)
+
+        then: 'the calls return at once, and their results come back on the event loop'
+        keys.size() > 0
+        answeredInline == [0, 0]
+        putThreads.size() == keys.size()
+        getThreads.size() == keys.size()
+        (putThreads + getThreads).every { it.startsWith('vert.x-eventloop-thread') }
+        TestUtils.getCached(holder, keys[0]).payload.getInteger('id') == 0
+
+        cleanup:
+        vertx.close()
+    }
+
+    def "responses should be bounded by bytes on heap and off-heap"() {
+        setup:
+        CacheLocator.init(node1)
+        ResponseHolder holder = ResponseHolder.of('apiGateway', '/bounded', 60000, 0, 0, 2
+                , new CacheConfig(heapSize: 256 * 1024))
+        String payload = 'x' * 100 * 1024
+
+        when: 'the pages are looked up often enough to be admitted once the region is full'
+        300.times {
+            CacheKey key = CacheKey.of("/bounded?page=${it}", null)
+            2.times { TestUtils.getCached(holder, key) }
+            TestUtils.putCached(holder, key, CachedResponse.of(new JsonObject([payload: payload])))
+        }
+        IgniteCache cache = node1.cache('apiGateway/bounded')
+        JsonObject stats = CacheLocator.stats('apiGateway')
+        TinyLfuEvictionPolicy heapPolicy = cache.getConfiguration(CacheConfiguration).evictionPolicy
+
+        then:
+        heapPolicy.currentMemorySize <= 2 * 256 * 1024
+        cache.localSize(CachePeekMode.OFFHEAP) < 300
+        TestUtils.getCached(holder, CacheKey.of('/bounded?page=299', null)).payload.getString('payload') == payload
+        stats.getJsonObject('region').getLong('allocatedPages') > 0
+        stats.getJsonObject('caches').getJsonObject('/bounded').getLong('offHeapEntries') < 300
+    }
+
+    def "one-off responses should not be written into a full region"() {
+        setup: 'the region is full of the pages of the previous feature'
+        CacheLocator.init(node1)
+        ResponseHolder holder = ResponseHolder.of('apiGateway', '/scanned', 60000, 0, 0, 1, new CacheConfig())
+        String payload = 'x' * 1024
+        List<CacheKey> hotKeys = (1..50).collect { CacheKey.of("/scanned?hot=${it}", null) }
+        hotKeys.each { key ->
+            2.times { TestUtils.getCached(holder, key) }
+            TestUtils.putCached(holder, key, CachedResponse.of(new JsonObject([payload: payload])))
+        }
+
+        when: 'a scan of unique urls misses and puts each of them once'
+        500.times {
+            CacheKey key = CacheKey.of("/scanned?page=${it}", null)
+            TestUtils.getCached(holder, key)
+            TestUtils.putCached(holder, key, CachedResponse.of(new JsonObject([payload: payload])))
+        }
+        JsonObject stats = CacheLocator.stats('apiGateway').getJsonObject('caches').getJsonObject('/scanned')
+
+        then: 'the scan is turned away, and the hot responses stay cached'
+        CacheLocator.isEvicting()
+        stats.getLong('refused') == 500
+        hotKeys.count { TestUtils.getCached(holder, it) != null } == hotKeys.size()
+    }
+
+    private static IgniteConfiguration nodeConfiguration(String name, TcpDiscoveryVmIpFinder ipFinder) {
+        new IgniteConfiguration(igniteInstanceName: name, localHost: '127.0.0.1'
+                , discoverySpi: new TcpDiscoverySpi(ipFinder: ipFinder)
+                , dataStorageConfiguration: new DataStorageConfiguration(
+                dataRegionConfigurations: [CacheLocator.dataRegion(20 * 1024 * 1024)] as DataRegionConfiguration[]))
+    }
+
+}
@@ -0,0 +1,185 @@
+package top.dteam.dgate.utils.cache
+
+import org.apache.ignite.cache.eviction.EvictableEntry
+import org.apache.ignite.cache.eviction.EvictionPolicy
+import org.apache.ignite.cache.eviction.lru.LruEvictionPolicy
+import spock.lang.Requires
+import spock.lang.Specification
+
+class TinyLfuEvictionPolicySpec extends Specification {
+
+    private static final int ENTRY_SIZE = 1024
+    private static final long HEAP_SIZE = 100 * ENTRY_SIZE
+
+    def "frequencies should be counted and fade away"() {
+        setup:
+        FrequencySketch sketch = new FrequencySketch(16)
+
+        when:
+        3.times { sketch.increment('/hot') }
+
+        then:
+        sketch.frequency('/hot') == 3
+        sketch.frequency('/cold') <= 1
+
+        when:
+        20.times { sketch.increment('/hot') }
+
+        then:
+        sketch.frequency('/hot') == 15
+
+        when:
+        (0..<160).each { sketch.increment("/scan-${it}".toString()) }
+
+        then:
+        sketch.frequency('/hot') < 15
+    }
+
+    def "entries should be kept within the byte budget"() {
+        setup:
+        TinyLfuEvictionPolicy policy = new TinyLfuEvictionPolicy(HEAP_SIZE)
+        TraceReplay replay = new TraceReplay(policy)
+
+        when:
+        (0..<1000).each { replay.access("/unique-${it}") }
+
+        then:
+        policy.currentMemorySize <= HEAP_SIZE
+        replay.cached.size() == policy.currentSize
+    }
+
+    def "hot entries should survive a scan"() {
+        setup:
+        List<String> trace = scanPollutedTrace(new Random(2018))
+
+        when:
+        double lru = new TraceReplay(new LruEvictionPolicy(maxSize: 0, maxMemorySize: HEAP_SIZE)).replay(trace)
+        double tinyLfu = new TraceReplay(new TinyLfuEvictionPolicy(HEAP_SIZE)).replay(trace)
+
+        then:
+        tinyLfu > lru
+        tinyLfu > 0.3
+    }
+
+    // gradle test --tests '*TinyLfuEvictionPolicySpec' -Ddgate.cache.trace=/path/to/uris.txt,
+    // with one request uri per line
+    @Requires({ System.getProperty('dgate.cache.trace') })
+    def "a recorded access trace should hit at least as often as with lru"() {
+        setup:
+        List<String> trace = new File(System.getProperty('dgate.cache.trace')).readLines()
+
+        when:
+        double lru = new TraceReplay(new LruEvictionPolicy(maxSize: 0, maxMemorySize: HEAP_SIZE)).replay(trace)
+        double tinyLfu = new TraceReplay(new TinyLfuEvictionPolicy(HEAP_SIZE)).replay(trace)
+
+        then:
+        tinyLfu >= lru
+    }
+
+    // half of the accesses go to 200 popular urls, the other half scan urls requested only once
+    private static List<String> scanPollutedTrace(Random random) {
+        List<String> trace = []
+        20000.times {
+            trace << (it % 2 == 0 ? "/hot-${(int) (200 * Math.pow(random.nextDouble(), 3))}".toString()
+                    : "/scan-${it}".toString())
+        }
+        trace
+    }
+
+    private static class TraceReplay {
+        EvictionPolicy<String, byte[]> policy
+        Map<String, TraceEntry> cached = [:]
+
+        TraceReplay(EvictionPolicy<String, byte[]> policy) {
+            this.policy = policy
+        }
+
+        double replay(List<String> trace) {
+            int hits = trace.count { access(it) } as int
+            hits / trace.size()
+        }
+
+        boolean access(String key) {
+            TraceEntry entry = cached[key]
+            boolean hit = entry != null
+            if (!hit) {
+                entry = new TraceEntry(key: key, replay: this)
+                cached[key] = entry
+            }
+            policy.onEntryAccessed(false, entry)
+            hit
+        }
+    }
+
+    private static class TraceEntry implements EvictableEntry<String, byte[]> {
+        String key
+        TraceReplay replay
+        Object meta
+
+        boolean evict() {
+            replay.cached.remove(key)
+            true
+        }
+
+        boolean isCached() {
+            replay.cached[key].is(this)
+        }
+
+        int size() {
+            ENTRY_SIZE
+        }
+
+        String getKey() {
+            key
+        }
+
+        byte[] getValue() {
+            new byte[ENTRY_SIZE]
+        }
+
+        def <T> T unwrap(Class<T> clazz) {
+            throw new UnsupportedOperationException()
+        }
+
+        def <T> T meta() {
+            meta as T
+        }
+
+        def <T> T addMeta(T val) {
+            T old = meta as T
+            meta = val
+            old
+        }
+
+        def <T> T putMetaIfAbsent(T val) {
+            if (meta == null) {
+                meta = val
+                return null
+            }
+            meta as T
+        }
+
+        def <T> boolean replaceMeta(T curVal, T newVal) {
+            if (meta.is(curVal)) {
+                meta = newVal
+                return true
+            }
+            false
+        }
+
+        def <T> T removeMeta() {
+            T old = meta as T
+            meta = null
+            old
+        }
+
+        def <T> boolean removeMeta(T val) {
+            if (meta.is(val)) {
+                meta = null
+                return true
+            }
+            false
+        }
+    }
+
+}